@@ -0,0 +1,86 @@
+import json
+import mmap
+import os
+import struct
+import time
+
+MAGIC = 0x42524c58
+HEADER_SIZE = 64
+
+
+class RingReader:
+  """Reads the stream input fed through the ring buffer file when xlearning.stream.transport is SHM."""
+
+  def __init__(self, path, wait=0.0001):
+    self.f = open(path, "r+b")
+    self.buf = mmap.mmap(self.f.fileno(), 0)
+    self.wait = wait
+    while struct.unpack_from("<i", self.buf, 0)[0] != MAGIC:
+      time.sleep(self.wait)
+    self.capacity = struct.unpack_from("<q", self.buf, 8)[0]
+    self.read_seq = struct.unpack_from("<q", self.buf, 24)[0]
+    self.pending = b""
+
+  def read(self, size=1 << 20):
+    """Returns up to size bytes, or b"" once the input is finished."""
+    while True:
+      closed = struct.unpack_from("<i", self.buf, 32)[0]
+      write_seq = struct.unpack_from("<q", self.buf, 16)[0]
+      if write_seq > self.read_seq:
+        break
+      if closed:
+        return b""
+      time.sleep(self.wait)
+    index = self.read_seq % self.capacity
+    n = min(size, write_seq - self.read_seq, self.capacity - index)
+    data = self.buf[HEADER_SIZE + index:HEADER_SIZE + index + n]
+    self.read_seq += n
+    struct.pack_into("<q", self.buf, 24, self.read_seq)
+    return data
+
+  def lines(self):
+    """Iterates over the records of the TEXT record format."""
+    while True:
+      data = self.read()
+      if not data:
+        break
+      data = self.pending + data
+      records = data.split(b"\n")
+      self.pending = records.pop()
+      for record in records:
+        yield record
+    if self.pending:
+      yield self.pending
+
+  def records(self):
+    """Iterates over the records of the BINARY record format."""
+    while True:
+      header = self._read_fully(4)
+      if not header:
+        break
+      yield self._read_fully(struct.unpack(">I", header)[0])
+
+  def _read_fully(self, n):
+    data = self.pending
+    while len(data) < n:
+      chunk = self.read()
+      if not chunk:
+        break
+      data += chunk
+    self.pending = data[n:]
+    return data[:n]
+
+  def close(self):
+    self.buf.close()
+    self.f.close()
+
+
+if __name__ == "__main__":
+  inputs = json.loads(os.environ["INPUT_FILE_LIST"])
+  for name, paths in inputs.items():
+    reader = RingReader(paths[0])
+    count = 0
+    for line in reader.lines():
+      count += 1
+    reader.close()
+    print("input %s has %d records" % (name, count))
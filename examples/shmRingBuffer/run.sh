@@ -0,0 +1,14 @@
+#!/bin/sh
+$XLEARNING_HOME/bin/xl-submit \
+   --app-type "xlearning" \
+   --app-name "shm-ring-demo" \
+   --input /tmp/data/tensorflow#data \
+   --files ringReader.py \
+   --launch-cmd "python ringReader.py" \
+   --input-strategy STREAM \
+   --conf xlearning.stream.transport=SHM \
+   --conf xlearning.stream.shm.dir=/dev/shm \
+   --worker-memory 2G \
+   --worker-num 2 \
+   --worker-cores 2 \
+   --queue default \
@@ -45,7 +45,7 @@ public class ApplicationContainerListener extends AbstractService implements App
 
   private final Map<XLearningContainerId, String> lightGBMIpPortMap;
 
-  private final Map<XLearningContainerId, String> reporterProgress;
+  private final Map<XLearningContainerId, Float> reporterProgress;
 
   private final Map<XLearningContainerId, String> mapedTaskID;
 
@@ -53,6 +53,8 @@ public class ApplicationContainerListener extends AbstractService implements App
 
   private final Map<XLearningContainerId, String> containersAppFinishTimeMap;
 
+  private final Map<XLearningContainerId, Long> containerId2UploadedBytes;
+
   private final Map<XLearningContainerId, ConcurrentHashMap<String, LinkedBlockingDeque<Object>>> containersCpuMetrics;
 
   private String clusterDefStr;
@@ -92,6 +94,7 @@ public class ApplicationContainerListener extends AbstractService implements App
     this.mapedTaskID = new ConcurrentHashMap<>();
     this.containersAppStartTimeMap = new ConcurrentHashMap<>();
     this.containersAppFinishTimeMap = new ConcurrentHashMap<>();
+    this.containerId2UploadedBytes = new ConcurrentHashMap<>();
     this.clusterDef = new ConcurrentHashMap<>();
     this.clusterDef.put(XLearningConstants.WORKER, Collections.synchronizedList(new ArrayList<ContainerHostPair>()));
     this.clusterDef.put(XLearningConstants.PS, Collections.synchronizedList(new ArrayList<ContainerHostPair>()));
@@ -146,7 +149,7 @@ public class ApplicationContainerListener extends AbstractService implements App
     return this.tensorboardUrl;
   }
 
-  public Map<XLearningContainerId, String> getReporterProgress() {
+  public Map<XLearningContainerId, Float> getReporterProgress() {
     return this.reporterProgress;
   }
 
@@ -213,7 +216,6 @@ public class ApplicationContainerListener extends AbstractService implements App
   public void registerContainer(XLearningContainerId containerId, String role) {
     containerId2Status.put(containerId, XLearningContainerStatus.UNDEFINED);
     containerId2Role.put(containerId, role);
-    reporterProgress.put(containerId, "");
     containersAppStartTimeMap.put(containerId, "");
     containersAppFinishTimeMap.put(containerId, "");
     containersCpuMetrics.put(containerId, new ConcurrentHashMap<String, LinkedBlockingDeque<Object>>());
@@ -478,15 +480,17 @@ public class ApplicationContainerListener extends AbstractService implements App
       lastTime.setLastTime(clock.getTime());
     }
 
+    // the heartbeat carries only the fields changed since the last one
     XLearningContainerStatus currentContainerStatus = heartbeatRequest.getXLearningContainerStatus();
-    LOG.debug("Received heartbeat from container " + containerId.toString() + ", status is " + currentContainerStatus.toString());
-    if (containerId2Status.get(containerId) == null || containerId2Status.get(containerId) != currentContainerStatus) {
+    LOG.debug("Received heartbeat from container " + containerId.toString() + (heartbeatRequest.hasField(HeartbeatRequest.STATUS) ? ", status is " + currentContainerStatus.toString() : ""));
+    if (heartbeatRequest.hasField(HeartbeatRequest.STATUS) && containerId2Status.get(containerId) != currentContainerStatus) {
       try {
         LOG.info("Update container " + containerId.toString() + " status to " + currentContainerStatus);
         containerId2Status.put(containerId, currentContainerStatus);
         if (currentContainerStatus.equals(XLearningContainerStatus.SUCCEEDED) || currentContainerStatus.equals(XLearningContainerStatus.FAILED)) {
           LOG.info("container " + containerId.toString() + " is " + currentContainerStatus + ", now remove from running containers");
           runningContainers.remove(containerId);
+          applicationContext.finishStreamInputs(containerId, currentContainerStatus.equals(XLearningContainerStatus.SUCCEEDED));
           if (containerId2InnerModel.containsKey(containerId)) {
             containerId2InnerModel.remove(containerId);
           }
@@ -496,23 +500,25 @@ public class ApplicationContainerListener extends AbstractService implements App
       }
     }
 
+    long uploadedBytes = heartbeatRequest.getOutputUploadedBytes();
+    if (heartbeatRequest.hasField(HeartbeatRequest.OUTPUT_UPLOAD) && uploadedBytes > 0 && !Long.valueOf(uploadedBytes).equals(containerId2UploadedBytes.get(containerId))) {
+      containerId2UploadedBytes.put(containerId, uploadedBytes);
+      long uploadMillis = Math.max(1L, heartbeatRequest.getOutputUploadMillis());
+      LOG.info("container " + containerId.toString() + " uploaded " + uploadedBytes + " bytes of output in "
+          + uploadMillis + "ms, " + (uploadedBytes * 1000L / uploadMillis) + " bytes/s");
+    }
+
+    if (heartbeatRequest.hasField(HeartbeatRequest.START_TIME)) {
+      this.containersAppStartTimeMap.put(containerId, new Date(heartbeatRequest.getContainersStartTime()).toString());
+    }
+    if (heartbeatRequest.hasField(HeartbeatRequest.FINISH_TIME)) {
+      this.containersAppFinishTimeMap.put(containerId, new Date(heartbeatRequest.getContainersFinishTime()).toString());
+    }
+
     if (containerId2Role.get(containerId).equals(XLearningConstants.WORKER.toString())) {
-      String localProgressLog = heartbeatRequest.getProgressLog();
-      if (!localProgressLog.equals("")) {
-        this.reporterProgress.put(containerId, localProgressLog);
-        try {
-          LOG.debug("container " + containerId + " " + localProgressLog);
-        } catch (Exception e) {
-          LOG.error("log progress error:" + e);
-        }
-      }
-      String localContainersStartTime = heartbeatRequest.getContainersStartTime();
-      if (!localContainersStartTime.equals("")) {
-        this.containersAppStartTimeMap.put(containerId, localContainersStartTime);
-      }
-      String localContainersFinishTime = heartbeatRequest.getContainersFinishTime();
-      if (!localContainersFinishTime.equals("")) {
-        this.containersAppFinishTimeMap.put(containerId, localContainersFinishTime);
+      if (heartbeatRequest.hasField(HeartbeatRequest.PROGRESS)) {
+        this.reporterProgress.put(containerId, heartbeatRequest.getProgress());
+        LOG.debug("container " + containerId + " reporter progress:" + heartbeatRequest.getProgress());
       }
       if (this.isSaveInnerModel) {
         if (containerId2InnerModel.containsKey(containerId)) {
@@ -524,7 +530,7 @@ public class ApplicationContainerListener extends AbstractService implements App
               LOG.error("Update container " + containerId.toString() + " interResult failed, ", e);
             }
           } else {
-            if (heartbeatRequest.getInnerModelSavedStatus()) {
+            if (heartbeatRequest.hasField(HeartbeatRequest.INNER_MODEL_SAVED) && heartbeatRequest.getInnerModelSavedStatus()) {
               if (!containerId2InnerModel.get(containerId).getModelSavedStatus()) {
                 LOG.info("container " + containerId.toString() + "saves the interResult " + this.interResultTimeStamp + " finished.");
                 containerId2InnerModel.put(containerId, new InnerModelSavedPair(this.interResultTimeStamp, true));
@@ -535,14 +541,6 @@ public class ApplicationContainerListener extends AbstractService implements App
       }
       return new HeartbeatResponse(isXLearningTrainFinished, this.interResultTimeStamp);
     } else {
-      String localContainersStartTime = heartbeatRequest.getContainersStartTime();
-      if (!localContainersStartTime.equals("")) {
-        this.containersAppStartTimeMap.put(containerId, localContainersStartTime);
-      }
-      String localContainersFinishTime = heartbeatRequest.getContainersFinishTime();
-      if (!localContainersFinishTime.equals("")) {
-        this.containersAppFinishTimeMap.put(containerId, localContainersFinishTime);
-      }
       return new HeartbeatResponse(isXLearningTrainFinished, Long.MIN_VALUE);
     }
   }
@@ -554,9 +552,19 @@ public class ApplicationContainerListener extends AbstractService implements App
   }
 
   @Override
-  public InputSplit[] getStreamInputSplit(XLearningContainerId containerId) {
-    int inputSplitSize = applicationContext.getStreamInputs(containerId).size();
-    return applicationContext.getStreamInputs(containerId).toArray(new InputSplit[inputSplitSize]);
+  public String[] getStreamInputNames() {
+    return applicationContext.getStreamInputNames().toArray(new String[0]);
+  }
+
+  @Override
+  public InputSplit[] getStreamInputSplit(XLearningContainerId containerId, String inputName) {
+    List<InputSplit> inputSplits = applicationContext.getStreamInputs(containerId, inputName);
+    return inputSplits.toArray(new InputSplit[inputSplits.size()]);
+  }
+
+  @Override
+  public InputSplit getNextSplit(XLearningContainerId containerId) {
+    return applicationContext.getNextStreamInput(containerId);
   }
 
   @Override
@@ -7,6 +7,7 @@ import net.qihoo.xlearning.common.*;
 import net.qihoo.xlearning.conf.XLearningConfiguration;
 import net.qihoo.xlearning.container.XLearningContainer;
 import net.qihoo.xlearning.container.XLearningContainerId;
+import net.qihoo.xlearning.util.InputPathLister;
 import net.qihoo.xlearning.util.Utilities;
 import net.qihoo.xlearning.webapp.AMParams;
 import org.apache.commons.lang.StringUtils;
@@ -90,8 +91,12 @@ public class ApplicationMaster extends CompositeService {
   private final List<OutputInfo> outputInfos;
   private ConcurrentHashMap<String, List<FileStatus>> input2FileStatus;
   private ConcurrentHashMap<XLearningContainerId, List<InputInfo>> containerId2InputInfo;
-  private InputSplit[] inputFileSplits;
-  private ConcurrentHashMap<XLearningContainerId, List<InputSplit>> containerId2InputSplit;
+  private Map<String, InputSplit[]> input2InputSplits;
+  private ConcurrentHashMap<String, ConcurrentHashMap<XLearningContainerId, List<InputSplit>>> input2ContainerInputSplits;
+
+  private String streamInputLocality;
+
+  private StreamSplitDispatcher streamSplitDispatcher;
   // An RPC Service listening the container status
   private ApplicationContainerListener containerListener;
   private int statusUpdateInterval;
@@ -124,8 +129,10 @@ public class ApplicationMaster extends CompositeService {
     outputInfos = new ArrayList<>();
     input2FileStatus = new ConcurrentHashMap<>();
     containerId2InputInfo = new ConcurrentHashMap<>();
-    inputFileSplits = null;
-    containerId2InputSplit = new ConcurrentHashMap<>();
+    input2InputSplits = new LinkedHashMap<>();
+    input2ContainerInputSplits = new ConcurrentHashMap<>();
+    streamInputLocality = "";
+    streamSplitDispatcher = null;
     // AM向RM汇报状态时间间隔，单位为毫秒：默认1000
     statusUpdateInterval = conf.getInt(XLearningConfiguration.XLEARNING_STATUS_UPDATE_INTERVAL, XLearningConfiguration.DEFAULT_XLEARNING_STATUS_PULL_INTERVAL);
     applicationAttemptID = Records.newRecord(ApplicationAttemptId.class);
@@ -320,7 +327,7 @@ public class ApplicationMaster extends CompositeService {
           String userName = StringUtils.split(conf.get("hadoop.job.ugi"), ',')[0];
           List<Container> workerContainers = applicationContext.getWorkerContainers();
           List<Container> psContainers = applicationContext.getPsContainers();
-          Map<XLearningContainerId, String> reporterProgress = applicationContext.getReporterProgress();
+          Map<XLearningContainerId, Float> reporterProgress = applicationContext.getReporterProgress();
           Map<XLearningContainerId, String> containersAppStartTime = applicationContext.getContainersAppStartTime();
           Map<XLearningContainerId, String> containersAppFinishTime = applicationContext.getContainersAppFinishTime();
           for (Container container : workerContainers) {
@@ -348,25 +355,11 @@ public class ApplicationMaster extends CompositeService {
             ConcurrentHashMap<String, LinkedBlockingDeque<Object>> cpuMetrics = applicationContext.getContainersCpuMetrics().get(new XLearningContainerId(container.getId()));
             containerMessage.put(AMParams.CONTAINER_CPU_METRICS, new Gson().toJson(cpuMetrics));
 
-            if (reporterProgress.get(new XLearningContainerId(container.getId())) != null && !reporterProgress.get(new XLearningContainerId(container.getId())).equals("")) {
-              String progressLog = reporterProgress.get(new XLearningContainerId(container.getId()));
-              String[] progress = progressLog.toString().split(":");
-              if (progress.length != 2) {
-                containerMessage.put(AMParams.CONTAINER_REPORTER_PROGRESS, "progress log format error");
-              } else {
-                try {
-                  Float percentProgress = Float.parseFloat(progress[1]);
-                  if (percentProgress < 0.0 || percentProgress > 1.0) {
-                    containerMessage.put(AMParams.CONTAINER_REPORTER_PROGRESS, "progress log format error");
-                  } else {
-                    DecimalFormat df = new DecimalFormat("0.00");
-                    df.setRoundingMode(RoundingMode.HALF_UP);
-                    containerMessage.put(AMParams.CONTAINER_REPORTER_PROGRESS, df.format((Float.parseFloat(progress[1]) * 100)) + "%");
-                  }
-                } catch (Exception e) {
-                  containerMessage.put(AMParams.CONTAINER_REPORTER_PROGRESS, "progress log format error");
-                }
-              }
+            Float percentProgress = reporterProgress.get(new XLearningContainerId(container.getId()));
+            if (percentProgress != null) {
+              DecimalFormat df = new DecimalFormat("0.00");
+              df.setRoundingMode(RoundingMode.HALF_UP);
+              containerMessage.put(AMParams.CONTAINER_REPORTER_PROGRESS, df.format(percentProgress * 100) + "%");
             } else {
               containerMessage.put(AMParams.CONTAINER_REPORTER_PROGRESS, "0.00%");
             }
@@ -452,7 +445,24 @@ public class ApplicationMaster extends CompositeService {
       return;
     }
 
+    InputPlan inputPlan = createInputPlan(xlearningInputs);
+    if (inputPlan != null && applicationAttemptID.getAttemptId() > 1) {
+      Map<String, List<FileStatus>> plannedFiles = inputPlan.loadFiles();
+      if (plannedFiles != null) {
+        input2FileStatus.putAll(plannedFiles);
+        for (List<FileStatus> fileStatus : plannedFiles.values()) {
+          if (fileStatus.size() > 0 && fileStatus.size() < workerNum) {
+            workerNum = fileStatus.size();
+            LOG.warn("File count " + fileStatus.size() + " less than the worker count " + workerNum);
+          }
+        }
+        return;
+      }
+    }
+
     String[] inputs = StringUtils.split(xlearningInputs, "|");
+    List<Path> inputPaths = new ArrayList<>();
+    InputPathLister lister = new InputPathLister(conf);
     if (inputs != null && inputs.length > 0) {
       for (String input : inputs) {
         String[] inputPathTuple = StringUtils.split(input, "#");
@@ -466,9 +476,11 @@ public class ApplicationMaster extends CompositeService {
             Path inputPath = new Path(singlePath);
             try {
               inputPath = inputPath.getFileSystem(conf).makeQualified(inputPath);
+              if (!isGlobPath(inputPath)) {
+                inputPaths.add(inputPath);
+              }
 
-              List<FileStatus> downLoadFile = Utilities.listStatusRecursively(inputPath,
-                  inputPath.getFileSystem(conf), null);
+              List<FileStatus> downLoadFile = lister.list(inputPath);
               fileStatus.addAll(downLoadFile);
             } catch (IOException e) {
               e.printStackTrace();
@@ -487,6 +499,27 @@ public class ApplicationMaster extends CompositeService {
         }
       }
     }
+    lister.close();
+    if (inputPlan != null) {
+      inputPlan.saveFiles(input2FileStatus, inputPaths);
+    }
+  }
+
+  /**
+   * @return the plan of the inputs saved in the staging directory, or null if the application will not be retried
+   */
+  private InputPlan createInputPlan(String xlearningInputs) {
+    if (conf.getInt(XLearningConfiguration.XLEARNING_APP_MAX_ATTEMPTS, XLearningConfiguration.DEFAULT_XLEARNING_APP_MAX_ATTEMPTS) <= 1
+        || !envs.containsKey(XLearningConstants.Environment.XLEARNING_STAGING_LOCATION.toString())) {
+      return null;
+    }
+    Path planPath = new Path(envs.get(XLearningConstants.Environment.XLEARNING_STAGING_LOCATION.toString()), XLearningConstants.INPUT_PLAN);
+    return new InputPlan(conf, planPath, xlearningInputs);
+  }
+
+  private static boolean isGlobPath(Path path) {
+    String pathString = path.toUri().getPath();
+    return pathString.contains("*") || pathString.contains("?") || pathString.contains("[") || pathString.contains("{");
   }
 
   /**
@@ -501,19 +534,44 @@ public class ApplicationMaster extends CompositeService {
       return;
     }
 
-    String[] inputPathTuple = StringUtils.split(xlearningInputs, "#");
-    if (inputPathTuple.length < 2) {
-      throw new RuntimeException("Error input path format " + xlearningInputs);
+    Map<String, List<String>> input2Paths = new LinkedHashMap<>();
+    for (String inputTuple : StringUtils.split(xlearningInputs, "|")) {
+      String[] inputPathTuple = StringUtils.split(inputTuple, "#");
+      if (inputPathTuple.length < 2 || StringUtils.isBlank(inputPathTuple[0])) {
+        throw new RuntimeException("Error input path format " + xlearningInputs);
+      }
+      if (!input2Paths.containsKey(inputPathTuple[1])) {
+        input2Paths.put(inputPathTuple[1], new ArrayList<String>());
+      }
+      input2Paths.get(inputPathTuple[1]).add(inputPathTuple[0]);
+    }
+    InputPlan inputPlan = createInputPlan(xlearningInputs);
+    if (inputPlan != null && applicationAttemptID.getAttemptId() > 1) {
+      Map<String, InputSplit[]> plannedSplits = inputPlan.loadSplits();
+      if (plannedSplits != null) {
+        input2InputSplits.putAll(plannedSplits);
+        return;
+      }
     }
-    String inputPathRemote = inputPathTuple[0];
-    if (!StringUtils.isBlank(inputPathRemote)) {
+    List<Path> inputPaths = new ArrayList<>();
+    for (Map.Entry<String, List<String>> entry : input2Paths.entrySet()) {
+      String inputPathRemote = StringUtils.join(entry.getValue(), ",");
       JobConf jobConf = new JobConf(conf);
       jobConf.set(XLearningConstants.STREAM_INPUT_DIR, inputPathRemote);
       InputFormat inputFormat = ReflectionUtils.newInstance(conf.getClass(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_INPUTF0RMAT_CLASS, InputFormat.class),
           jobConf);
-      inputFileSplits = inputFormat.getSplits(jobConf, 1);
-    } else {
-      throw new RuntimeException("Error input path format " + xlearningInputs);
+      InputSplit[] inputFileSplits = inputFormat.getSplits(jobConf, 1);
+      LOG.info("Stream input " + entry.getKey() + " has " + inputFileSplits.length + " splits");
+      input2InputSplits.put(entry.getKey(), inputFileSplits);
+      for (String singlePath : StringUtils.split(inputPathRemote, ",")) {
+        Path inputPath = new Path(singlePath);
+        if (!isGlobPath(inputPath)) {
+          inputPaths.add(inputPath.getFileSystem(conf).makeQualified(inputPath));
+        }
+      }
+    }
+    if (inputPlan != null) {
+      inputPlan.saveSplits(input2InputSplits, inputPaths);
     }
   }
 
@@ -524,13 +582,26 @@ public class ApplicationMaster extends CompositeService {
       LOG.info("Initializing " + container.getId().toString() + " input splits");
       containerId2InputInfo.putIfAbsent(new XLearningContainerId(container.getId()), new ArrayList<InputInfo>());
     }
+    boolean isBalance = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_BALANCE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_BALANCE);
+    long[] workerBytes = new long[workerNum];
     Set<String> fileKeys = input2FileStatus.keySet();
     for (String fileName : fileKeys) {
       List<FileStatus> files = input2FileStatus.get(fileName);
       List<Path> paths = Utilities.convertStatusToPath(files);
+      long[] fileBytes = new long[files.size()];
+      for (int i = 0; i < fileBytes.length; i++) {
+        fileBytes[i] = files.get(i).getLen();
+      }
+      int[] fileWorkers = null;
+      if (isBalance) {
+        fileWorkers = BalancedAssigner.assign(fileBytes, workerBytes);
+      }
       ConcurrentHashMap<XLearningContainerId, ConcurrentHashMap<String, InputInfo>> containersFiles = new ConcurrentHashMap<>();
       for (int i = 0, len = paths.size(); i < len; i++) {
-        Integer index = i % workerNum;
+        Integer index = isBalance ? fileWorkers[i] : i % workerNum;
+        if (!isBalance) {
+          workerBytes[index] += fileBytes[i];
+        }
         ConcurrentHashMap<String, InputInfo> mapSplit;
         XLearningContainerId containerId = new XLearningContainerId(acquiredWorkerContainers.get(index).getId());
         if (containersFiles.containsKey(containerId)) {
@@ -556,16 +627,57 @@ public class ApplicationMaster extends CompositeService {
         LOG.info("put " + fileName + " to " + containerId.toString());
       }
     }
+    LOG.info("Input balance: " + BalancedAssigner.getBalanceSummary(workerBytes));
     LOG.info("inputInfo " + new Gson().toJson(containerId2InputInfo));
   }
 
-  private void allocateInputStreamSplits() {
-
-    for (Container container : acquiredWorkerContainers) {
-      LOG.info("Initializing " + container.getId().toString() + " input splits");
-      containerId2InputSplit.putIfAbsent(new XLearningContainerId(container.getId()), new ArrayList<InputSplit>());
+  private void allocateInputStreamSplits() throws IOException {
+    boolean isDynamic = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_DYNAMIC, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_DYNAMIC);
+    if (isDynamic && input2InputSplits.size() > 1) {
+      LOG.warn("XLEARNING_INPUT_STREAM_DYNAMIC supports only one stream input, assign the splits of the "
+          + input2InputSplits.size() + " stream inputs to the workers statically");
+      isDynamic = false;
+    }
+    for (Map.Entry<String, InputSplit[]> entry : input2InputSplits.entrySet()) {
+      ConcurrentHashMap<XLearningContainerId, List<InputSplit>> containerId2InputSplit = new ConcurrentHashMap<>();
+      for (Container container : acquiredWorkerContainers) {
+        LOG.info("Initializing " + container.getId().toString() + " input splits of " + entry.getKey());
+        containerId2InputSplit.putIfAbsent(new XLearningContainerId(container.getId()), new ArrayList<InputSplit>());
+      }
+      input2ContainerInputSplits.put(entry.getKey(), containerId2InputSplit);
+      if (isDynamic) {
+        LOG.info("XLEARNING_INPUT_STREAM_DYNAMIC is true");
+        streamSplitDispatcher = new StreamSplitDispatcher(entry.getValue(),
+            conf.getInt(XLearningConfiguration.XLEARNING_STREAM_EPOCH, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_EPOCH));
+      } else {
+        allocateInputStreamSplits(entry.getKey(), entry.getValue(), containerId2InputSplit);
+      }
     }
-    if (conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_SHUFFLE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SHUFFLE)) {
+  }
+
+  private void allocateInputStreamSplits(String inputName, InputSplit[] inputFileSplits,
+                                         ConcurrentHashMap<XLearningContainerId, List<InputSplit>> containerId2InputSplit) throws IOException {
+    if (conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_LOCALITY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_LOCALITY)) {
+      LOG.info("XLEARNING_INPUT_STREAM_LOCALITY is true");
+      StreamSplitAssigner assigner = new StreamSplitAssigner(conf, acquiredWorkerContainers);
+      containerId2InputSplit.putAll(assigner.assign(inputFileSplits));
+      String locality = input2InputSplits.size() > 1 ? inputName + ": " + assigner.getLocalitySummary() : assigner.getLocalitySummary();
+      streamInputLocality = streamInputLocality.isEmpty() ? locality : streamInputLocality + "; " + locality;
+    } else if (conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_BALANCE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_BALANCE)) {
+      LOG.info("XLEARNING_INPUT_BALANCE is true");
+      long[] splitBytes = new long[inputFileSplits.length];
+      for (int i = 0; i < splitBytes.length; i++) {
+        splitBytes[i] = inputFileSplits[i].getLength();
+      }
+      long[] workerBytes = new long[workerNum];
+      int[] splitWorkers = BalancedAssigner.assign(splitBytes, workerBytes);
+      for (int i = 0; i < splitWorkers.length; i++) {
+        XLearningContainerId containerId = new XLearningContainerId(acquiredWorkerContainers.get(splitWorkers[i]).getId());
+        containerId2InputSplit.get(containerId).add(inputFileSplits[i]);
+        LOG.info("put split " + (i + 1) + " to " + containerId.toString());
+      }
+      LOG.info("Input balance: " + BalancedAssigner.getBalanceSummary(workerBytes));
+    } else if (conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_SHUFFLE, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_SHUFFLE)) {
       LOG.info("XLEARNING_INPUT_STREAM_SHUFFLE is true");
       for (int i = 0, len = inputFileSplits.length; i < len; i++) {
         Integer index = i % workerNum;
@@ -1253,26 +1365,12 @@ public class ApplicationMaster extends CompositeService {
           }
         }
         List<Container> workerContainers = applicationContext.getWorkerContainers();
-        Map<XLearningContainerId, String> clientProgress = applicationContext.getReporterProgress();
+        Map<XLearningContainerId, Float> clientProgress = applicationContext.getReporterProgress();
         float total = 0.0f;
         for (Container container : workerContainers) {
-          String progressLog = clientProgress.get(new XLearningContainerId(container.getId()));
-          if (progressLog != null && !progressLog.equals("")) {
-            String[] progress = progressLog.toString().split(":");
-            if (progress.length != 2) {
-              this.appendMessage("progress log format error", false);
-            } else {
-              try {
-                Float percentProgress = Float.parseFloat(progress[1]);
-                if (percentProgress < 0.0 || percentProgress > 1.0) {
-                  this.appendMessage("progress log format error", false);
-                } else {
-                  total += Float.parseFloat(progress[1]);
-                }
-              } catch (Exception e) {
-                this.appendMessage("progress log format error", false);
-              }
-            }
+          Float percentProgress = clientProgress.get(new XLearningContainerId(container.getId()));
+          if (percentProgress != null) {
+            total += percentProgress;
           }
         }
         if (total > 0.0f) {
@@ -1298,46 +1396,53 @@ public class ApplicationMaster extends CompositeService {
       }
 
       finalSuccess = containerListener.isAllWorkerContainersSucceeded();
+      if (finalSuccess && streamSplitDispatcher != null && streamSplitDispatcher.getPendingSplits() > 0) {
+        // the splits reclaimed from a failed worker after the others ended their input were never read
+        finalSuccess = false;
+        diagnostics = streamSplitDispatcher.getPendingSplits() + " stream input splits were never read";
+        this.appendMessage(diagnostics + ", do not commit the output", true);
+      }
       if (finalSuccess) {
+        long commitStartTime = System.currentTimeMillis();
+        OutputCompactor compactor = null;
+        if (conf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_COMPACT_ENABLE, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMPACT_ENABLE)) {
+          // only the text stream output is known to be lines that may be concatenated
+          if (conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STRATEGY).equals("STREAM")
+              && !"BINARY".equalsIgnoreCase(conf.get(XLearningConfiguration.XLEARNING_STREAM_RECORD_FORMAT, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_RECORD_FORMAT))
+              && conf.getClass(XLearningConfiguration.XLEARNING_OUTPUTFORMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUTF0RMAT_CLASS, OutputFormat.class) == TextMultiOutputFormat.class) {
+            compactor = new OutputCompactor(conf);
+          } else {
+            LOG.info("Output compaction only handles the text STREAM output written by " + TextMultiOutputFormat.class.getName() + ", skip it");
+          }
+        }
+        OutputCommitEngine commitEngine = new OutputCommitEngine(conf, compactor);
+        List<String> workerContainerIds = new ArrayList<>(acquiredWorkerContainers.size());
+        for (Container finishedContainer : acquiredWorkerContainers) {
+          workerContainerIds.add(finishedContainer.getId().toString());
+        }
         if ((conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STRATEGY).equals("STREAM")) && outputInfos.size() > 0) {
           LOG.info("XLEARNING_OUTPUT_STRATEGY is STREAM, AM handling the final result...");
-          FileSystem fs = new Path(outputInfos.get(0).getDfsLocation()).getFileSystem(conf);
-          Map<XLearningContainerId, String> mapPath = applicationContext.getMapedTaskID();
-          for (Container finishedContainer : acquiredWorkerContainers) {
-            String taskID = mapPath.get(new XLearningContainerId(finishedContainer.getId()));
-            Path tmpResultPath = new Path(outputInfos.get(0).getDfsLocation() + "/_temporary/" + finishedContainer.getId().toString()
-                + "/_temporary/0/_temporary/" + taskID);
-            LOG.info("tmpResultPath is " + tmpResultPath.toString());
-            Path finalResultPath = new Path(outputInfos.get(0).getDfsLocation() + "/" + finishedContainer.getId().toString());
-            LOG.info("finalResultPath is " + finalResultPath.toString());
-            if (fs.exists(tmpResultPath)) {
-              LOG.info("Move from " + tmpResultPath.toString() + " to " + finalResultPath.toString());
-              fs.rename(tmpResultPath, finalResultPath);
-            }
+          Map<String, String> streamTaskIds = new HashMap<>();
+          for (Map.Entry<XLearningContainerId, String> entry : applicationContext.getMapedTaskID().entrySet()) {
+            streamTaskIds.put(entry.getKey().toString(), entry.getValue());
           }
-          Path tmpPath = new Path(outputInfos.get(0).getDfsLocation() + "/_temporary/");
-          if (fs.exists(tmpPath)) {
-            fs.delete(tmpPath, true);
+          if (conf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_ROUTE_ENABLE, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_ROUTE_ENABLE)) {
+            // the routed lines may go to any of the outputs
+            for (OutputInfo outputInfo : outputInfos) {
+              commitEngine.commit(outputInfo.getDfsLocation(), workerContainerIds, streamTaskIds);
+            }
+          } else {
+            commitEngine.commit(outputInfos.get(0).getDfsLocation(), workerContainerIds, streamTaskIds);
           }
-          fs.createNewFile(new Path(outputInfos.get(0).getDfsLocation() + "/_SUCCESS"));
-          fs.close();
         } else {
           for (OutputInfo outputInfo : outputInfos) {
-            FileSystem fs = new Path(outputInfo.getDfsLocation()).getFileSystem(conf);
-            Path finalResultPath = new Path(outputInfo.getDfsLocation());
-            for (Container finishedContainer : acquiredWorkerContainers) {
-              Path tmpResultPath = new Path(outputInfo.getDfsLocation() + "/_temporary/" + finishedContainer.getId().toString());
-              if (fs.exists(tmpResultPath)) {
-                LOG.info("Move from " + tmpResultPath.toString() + " to " + finalResultPath);
-                fs.rename(tmpResultPath, finalResultPath);
-              }
-            }
-            Path tmpPath = new Path(outputInfo.getDfsLocation() + "/_temporary/");
-            if (fs.exists(tmpPath)) {
-              fs.delete(tmpPath, true);
-            }
-            fs.createNewFile(new Path(outputInfo.getDfsLocation() + "/_SUCCESS"));
-            fs.close();
+            commitEngine.commit(outputInfo.getDfsLocation(), workerContainerIds, null);
+          }
+        }
+        this.appendMessage("Output committed, cost " + (System.currentTimeMillis() - commitStartTime) + "ms", true);
+        if (compactor != null) {
+          for (String summary : compactor.getSummaries()) {
+            this.appendMessage(summary, true);
           }
         }
       }
@@ -1416,14 +1521,45 @@ public class ApplicationMaster extends CompositeService {
     }
 
     @Override
-    public List<InputSplit> getStreamInputs(XLearningContainerId containerId) {
-      if (!containerId2InputSplit.containsKey(containerId)) {
+    public List<String> getStreamInputNames() {
+      return new ArrayList<>(input2InputSplits.keySet());
+    }
+
+    @Override
+    public List<InputSplit> getStreamInputs(XLearningContainerId containerId, String inputName) {
+      ConcurrentHashMap<XLearningContainerId, List<InputSplit>> containerId2InputSplit = input2ContainerInputSplits.get(inputName);
+      if (containerId2InputSplit == null || !containerId2InputSplit.containsKey(containerId)) {
         LOG.info("containerId2InputSplit not contains" + containerId.getContainerId());
         return new ArrayList<InputSplit>();
       }
       return containerId2InputSplit.get(containerId);
     }
 
+    @Override
+    public String getStreamInputLocality() {
+      return streamInputLocality;
+    }
+
+    @Override
+    public InputSplit getNextStreamInput(XLearningContainerId containerId) {
+      if (streamSplitDispatcher == null) {
+        return null;
+      }
+      return streamSplitDispatcher.next(containerId);
+    }
+
+    @Override
+    public void finishStreamInputs(XLearningContainerId containerId, boolean succeeded) {
+      if (streamSplitDispatcher == null) {
+        return;
+      }
+      if (succeeded) {
+        streamSplitDispatcher.finish(containerId);
+      } else {
+        streamSplitDispatcher.reclaim(containerId);
+      }
+    }
+
     @Override
     public List<OutputInfo> getOutputs() {
       return outputInfos;
@@ -1435,7 +1571,7 @@ public class ApplicationMaster extends CompositeService {
     }
 
     @Override
-    public Map<XLearningContainerId, String> getReporterProgress() {
+    public Map<XLearningContainerId, Float> getReporterProgress() {
       return containerListener.getReporterProgress();
     }
 
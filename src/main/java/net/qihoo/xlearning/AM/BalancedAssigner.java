@@ -0,0 +1,79 @@
+package net.qihoo.xlearning.AM;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Longest-processing-time greedy assignment: the items are placed from the largest to the smallest,
+ * each one on the worker holding the fewest bytes so far. The first items placed go to distinct workers,
+ * so that every worker gets at least one item whenever there are as many items as workers, even when the
+ * workers already hold bytes of the previous inputs.
+ */
+public final class BalancedAssigner {
+
+  private BalancedAssigner() {
+  }
+
+  /**
+   * @param sizes       the bytes of each item
+   * @param workerBytes the bytes already held by each worker, updated with the assigned items
+   * @return the worker index of each item
+   */
+  public static int[] assign(final long[] sizes, final long[] workerBytes) {
+    Integer[] order = new Integer[sizes.length];
+    for (int i = 0; i < sizes.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Long.compare(sizes[b], sizes[a]);
+      }
+    });
+    Comparator<Integer> byBytes = new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        int cmp = Long.compare(workerBytes[a], workerBytes[b]);
+        return cmp != 0 ? cmp : Integer.compare(a, b);
+      }
+    };
+    Integer[] leastLoaded = new Integer[workerBytes.length];
+    for (int i = 0; i < workerBytes.length; i++) {
+      leastLoaded[i] = i;
+    }
+    Arrays.sort(leastLoaded, byBytes);
+    int[] assignment = new int[sizes.length];
+    // one item for each worker first, the largest items to the least loaded workers
+    int first = Math.min(order.length, leastLoaded.length);
+    for (int i = 0; i < first; i++) {
+      assignment[order[i]] = leastLoaded[i];
+      workerBytes[leastLoaded[i]] += sizes[order[i]];
+    }
+    PriorityQueue<Integer> workers = new PriorityQueue<>(Math.max(1, workerBytes.length), byBytes);
+    for (int i = 0; i < workerBytes.length; i++) {
+      workers.add(i);
+    }
+    for (int i = first; i < order.length; i++) {
+      int worker = workers.poll();
+      assignment[order[i]] = worker;
+      workerBytes[worker] += sizes[order[i]];
+      workers.add(worker);
+    }
+    return assignment;
+  }
+
+  public static String getBalanceSummary(long[] workerBytes) {
+    long max = 0L;
+    long min = Long.MAX_VALUE;
+    for (long bytes : workerBytes) {
+      max = Math.max(max, bytes);
+      min = Math.min(min, bytes);
+    }
+    if (workerBytes.length == 0) {
+      min = 0L;
+    }
+    return "max " + max + " bytes, min " + min + " bytes, max/min ratio "
+        + (min == 0 ? (max == 0 ? "1.00" : "inf") : String.format("%.2f", max / (double) min));
+  }
+}
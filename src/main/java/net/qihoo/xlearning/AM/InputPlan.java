@@ -0,0 +1,279 @@
+package net.qihoo.xlearning.AM;
+
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.ObjectWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The input files or the input splits computed by the first AM attempt, saved in the staging directory
+ * so that the later attempts can skip the listing and the getSplits. The plan is reused only if the
+ * input arguments are the same and the input paths, the planned files and the directories holding them
+ * keep the same modification time and length, so that appended or added files are seen. The statuses are
+ * checked through one listing of each parent directory. The locations of the splits are saved with them.
+ */
+public class InputPlan {
+
+  private static final Log LOG = LogFactory.getLog(InputPlan.class);
+
+  private static final int VERSION = 3;
+
+  private final Configuration conf;
+
+  private final Path planPath;
+
+  private final String inputs;
+
+  public InputPlan(Configuration conf, Path planPath, String inputs) {
+    this.conf = conf;
+    this.planPath = planPath;
+    this.inputs = inputs + "@" + conf.get(XLearningConfiguration.XLEARNING_INPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STRATEGY)
+        + "@" + conf.get(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS, "");
+  }
+
+  public void saveFiles(Map<String, List<FileStatus>> input2FileStatus, List<Path> inputPaths) {
+    Set<Path> dirs = new LinkedHashSet<>(inputPaths);
+    for (List<FileStatus> files : input2FileStatus.values()) {
+      for (FileStatus file : files) {
+        dirs.add(file.getPath().getParent());
+        dirs.add(file.getPath());
+      }
+    }
+    FSDataOutputStream out = null;
+    try {
+      out = create();
+      writeFingerprints(out, dirs);
+      out.writeInt(input2FileStatus.size());
+      for (Map.Entry<String, List<FileStatus>> entry : input2FileStatus.entrySet()) {
+        Text.writeString(out, entry.getKey());
+        out.writeInt(entry.getValue().size());
+        for (FileStatus file : entry.getValue()) {
+          file.write(out);
+        }
+      }
+      out.close();
+      out = null;
+      LOG.info("Saved the input plan to " + planPath);
+    } catch (IOException e) {
+      LOG.warn("Save the input plan failed, the retried attempts will list the inputs again. " + e);
+    } finally {
+      closeQuietly(out);
+    }
+  }
+
+  public Map<String, List<FileStatus>> loadFiles() {
+    FSDataInputStream in = open();
+    if (in == null) {
+      return null;
+    }
+    try {
+      if (!validate(in)) {
+        return null;
+      }
+      Map<String, List<FileStatus>> input2FileStatus = new HashMap<>();
+      int inputNum = in.readInt();
+      for (int i = 0; i < inputNum; i++) {
+        String alias = Text.readString(in);
+        int fileNum = in.readInt();
+        List<FileStatus> files = new ArrayList<>(fileNum);
+        for (int j = 0; j < fileNum; j++) {
+          FileStatus file = new FileStatus();
+          file.readFields(in);
+          files.add(file);
+        }
+        input2FileStatus.put(alias, files);
+      }
+      LOG.info("Reuse the input plan from " + planPath);
+      return input2FileStatus;
+    } catch (IOException e) {
+      LOG.warn("Load the input plan failed. " + e);
+      return null;
+    } finally {
+      closeQuietly(in);
+    }
+  }
+
+  public void saveSplits(Map<String, InputSplit[]> input2Splits, List<Path> inputPaths) {
+    Set<Path> dirs = new LinkedHashSet<>(inputPaths);
+    for (InputSplit[] splits : input2Splits.values()) {
+      for (InputSplit split : splits) {
+        if (split instanceof FileSplit) {
+          dirs.add(((FileSplit) split).getPath().getParent());
+          dirs.add(((FileSplit) split).getPath());
+        }
+      }
+    }
+    FSDataOutputStream out = null;
+    try {
+      out = create();
+      writeFingerprints(out, dirs);
+      out.writeInt(input2Splits.size());
+      for (Map.Entry<String, InputSplit[]> entry : input2Splits.entrySet()) {
+        Text.writeString(out, entry.getKey());
+        out.writeInt(entry.getValue().length);
+        for (InputSplit split : entry.getValue()) {
+          ObjectWritable.writeObject(out, split, InputSplit.class, conf);
+          // the splits do not serialize their locations, which the locality aware assignment needs
+          String[] locations = split.getLocations();
+          out.writeInt(locations == null ? 0 : locations.length);
+          for (int i = 0; locations != null && i < locations.length; i++) {
+            Text.writeString(out, locations[i]);
+          }
+        }
+      }
+      out.close();
+      out = null;
+      LOG.info("Saved the input plan to " + planPath);
+    } catch (IOException e) {
+      LOG.warn("Save the input plan failed, the retried attempts will compute the splits again. " + e);
+    } finally {
+      closeQuietly(out);
+    }
+  }
+
+  public Map<String, InputSplit[]> loadSplits() {
+    FSDataInputStream in = open();
+    if (in == null) {
+      return null;
+    }
+    try {
+      if (!validate(in)) {
+        return null;
+      }
+      Map<String, InputSplit[]> input2Splits = new LinkedHashMap<>();
+      int inputNum = in.readInt();
+      for (int i = 0; i < inputNum; i++) {
+        String alias = Text.readString(in);
+        InputSplit[] splits = new InputSplit[in.readInt()];
+        for (int j = 0; j < splits.length; j++) {
+          InputSplit split = (InputSplit) ObjectWritable.readObject(in, conf);
+          String[] locations = new String[in.readInt()];
+          for (int k = 0; k < locations.length; k++) {
+            locations[k] = Text.readString(in);
+          }
+          if (split instanceof FileSplit) {
+            FileSplit fileSplit = (FileSplit) split;
+            split = new FileSplit(fileSplit.getPath(), fileSplit.getStart(), fileSplit.getLength(), locations);
+          }
+          splits[j] = split;
+        }
+        input2Splits.put(alias, splits);
+      }
+      LOG.info("Reuse the input plan from " + planPath);
+      return input2Splits;
+    } catch (IOException e) {
+      LOG.warn("Load the input plan failed. " + e);
+      return null;
+    } finally {
+      closeQuietly(in);
+    }
+  }
+
+  private FSDataOutputStream create() throws IOException {
+    FileSystem fs = planPath.getFileSystem(conf);
+    FSDataOutputStream out = fs.create(planPath, true);
+    out.writeInt(VERSION);
+    Text.writeString(out, inputs);
+    return out;
+  }
+
+  private FSDataInputStream open() {
+    try {
+      return planPath.getFileSystem(conf).open(planPath);
+    } catch (FileNotFoundException e) {
+      LOG.info("No input plan found in " + planPath);
+    } catch (IOException e) {
+      LOG.warn("Open the input plan failed. " + e);
+    }
+    return null;
+  }
+
+  private void writeFingerprints(DataOutput out, Set<Path> paths) throws IOException {
+    Map<Path, Map<Path, FileStatus>> listings = new HashMap<>();
+    out.writeInt(paths.size());
+    for (Path path : paths) {
+      FileStatus status = getFileStatus(path, listings);
+      if (status == null) {
+        throw new FileNotFoundException("Input path " + path + " not found");
+      }
+      Text.writeString(out, path.toString());
+      out.writeLong(status.getModificationTime());
+      out.writeLong(status.getLen());
+    }
+  }
+
+  private boolean validate(DataInput in) throws IOException {
+    if (in.readInt() != VERSION || !inputs.equals(Text.readString(in))) {
+      LOG.info("The input arguments changed, compute the input plan again");
+      return false;
+    }
+    Map<Path, Map<Path, FileStatus>> listings = new HashMap<>();
+    int pathNum = in.readInt();
+    for (int i = 0; i < pathNum; i++) {
+      Path path = new Path(Text.readString(in));
+      long modificationTime = in.readLong();
+      long length = in.readLong();
+      FileStatus status = getFileStatus(path, listings);
+      if (status == null || status.getModificationTime() != modificationTime || status.getLen() != length) {
+        LOG.info("Input path " + path + " changed, compute the input plan again");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Looks the path up in the listing of its parent, each parent being listed once.
+   */
+  private FileStatus getFileStatus(Path path, Map<Path, Map<Path, FileStatus>> listings) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    Path qualified = fs.makeQualified(path);
+    Path parent = qualified.getParent();
+    if (parent == null) {
+      try {
+        return fs.getFileStatus(qualified);
+      } catch (FileNotFoundException e) {
+        return null;
+      }
+    }
+    Map<Path, FileStatus> listing = listings.get(parent);
+    if (listing == null) {
+      listing = new HashMap<>();
+      try {
+        for (FileStatus status : fs.listStatus(parent)) {
+          listing.put(fs.makeQualified(status.getPath()), status);
+        }
+      } catch (FileNotFoundException e) {
+        LOG.debug("Input directory " + parent + " not found");
+      }
+      listings.put(parent, listing);
+    }
+    return listing.get(qualified);
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        LOG.debug("Close the input plan failed: " + e);
+      }
+    }
+  }
+}
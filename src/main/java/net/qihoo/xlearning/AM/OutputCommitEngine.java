@@ -0,0 +1,160 @@
+package net.qihoo.xlearning.AM;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import net.qihoo.xlearning.util.Utilities;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Commits the outputs of the worker containers under an output location: moves the output of each container
+ * out of _temporary with concurrent renames, then removes _temporary and creates _SUCCESS. The _temporary
+ * directory is listed once instead of checking every container. In the direct commit mode the containers have
+ * renamed their own outputs, and only _temporary and _SUCCESS are handled here. With a compactor, the committed
+ * stream outputs are compacted before _SUCCESS is created.
+ */
+public class OutputCommitEngine {
+
+  private static final Log LOG = LogFactory.getLog(OutputCommitEngine.class);
+
+  private final Configuration conf;
+
+  private final int threadNum;
+
+  private final int retry;
+
+  private final boolean direct;
+
+  private final OutputCompactor compactor;
+
+  public OutputCommitEngine(Configuration conf) {
+    this(conf, null);
+  }
+
+  public OutputCommitEngine(Configuration conf, OutputCompactor compactor) {
+    this.conf = conf;
+    this.compactor = compactor;
+    this.threadNum = Math.max(1, conf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_COMMIT_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMMIT_THREAD_NUMS));
+    this.retry = conf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_COMMIT_RETRY, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMMIT_RETRY);
+    this.direct = conf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_COMMIT_DIRECT, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMMIT_DIRECT);
+  }
+
+  /**
+   * Commits the outputs of the containers under dfsLocation. In the STREAM strategy, streamTaskIds gives the task
+   * attempt id of each container, and its output is moved to dfsLocation/containerId; otherwise it is null, and
+   * the uploaded container directory is moved into dfsLocation.
+   */
+  public void commit(String dfsLocation, List<String> containerIds, Map<String, String> streamTaskIds) throws IOException {
+    long startTime = System.currentTimeMillis();
+    Path outputPath = new Path(dfsLocation);
+    Path tmpPath = new Path(dfsLocation + "/_temporary/");
+    FileSystem fs = outputPath.getFileSystem(conf);
+    int committed = 0;
+    if (!direct) {
+      Set<String> uploaded = new HashSet<>();
+      try {
+        for (FileStatus status : fs.listStatus(tmpPath)) {
+          uploaded.add(status.getPath().getName());
+        }
+      } catch (FileNotFoundException e) {
+        LOG.info("No container output under " + tmpPath);
+      }
+      List<Path[]> renames = new ArrayList<>();
+      for (String containerId : containerIds) {
+        if (!uploaded.contains(containerId)) {
+          continue;
+        }
+        if (streamTaskIds != null) {
+          renames.add(new Path[]{new Path(dfsLocation + "/_temporary/" + containerId + "/_temporary/0/_temporary/" + streamTaskIds.get(containerId)),
+              new Path(dfsLocation + "/" + containerId)});
+        } else {
+          renames.add(new Path[]{new Path(dfsLocation + "/_temporary/" + containerId), outputPath});
+        }
+      }
+      committed = rename(fs, renames);
+    }
+    if (compactor != null && streamTaskIds != null) {
+      try {
+        compactor.compact(dfsLocation);
+      } catch (IOException e) {
+        // compaction is best effort, the committed output is complete without it
+        LOG.warn("Compact output " + dfsLocation + " failed", e);
+      }
+    }
+    if (fs.exists(tmpPath)) {
+      fs.delete(tmpPath, true);
+    }
+    fs.createNewFile(new Path(dfsLocation + "/_SUCCESS"));
+    LOG.info("Committed " + (direct ? "directly" : committed + " container outputs") + " to " + dfsLocation
+        + ", cost " + (System.currentTimeMillis() - startTime) + "ms");
+  }
+
+  private int rename(final FileSystem fs, List<Path[]> renames) throws IOException {
+    ExecutorService commitPool = Executors.newFixedThreadPool(Math.min(threadNum, Math.max(1, renames.size())),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("Output-Commit-Thread #%d")
+            .build());
+    try {
+      List<Future<Boolean>> futures = new ArrayList<>(renames.size());
+      for (final Path[] rename : renames) {
+        futures.add(commitPool.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws IOException {
+            return renameWithRetry(fs, rename[0], rename[1]);
+          }
+        }));
+      }
+      int committed = 0;
+      for (Future<Boolean> future : futures) {
+        try {
+          if (future.get()) {
+            committed++;
+          }
+        } catch (ExecutionException e) {
+          throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted while committing the outputs");
+        }
+      }
+      return committed;
+    } finally {
+      commitPool.shutdownNow();
+    }
+  }
+
+  private boolean renameWithRetry(FileSystem fs, Path src, Path dst) throws IOException {
+    int retried = 0;
+    while (true) {
+      try {
+        if (fs.rename(src, dst)) {
+          LOG.info("Move from " + src + " to " + dst);
+          return true;
+        }
+        // a rename retried after a lost response finds the source moved already
+        if (!fs.exists(src)) {
+          LOG.info("Container output " + src + " not found, skip it");
+          return false;
+        }
+        throw new IOException("Rename " + src + " to " + dst + " failed");
+      } catch (IOException e) {
+        if (retried >= retry) {
+          throw e;
+        }
+        retried++;
+        LOG.warn("Commit " + src + " failed, retry in " + retried, e);
+        Utilities.sleep(1000L * retried);
+      }
+    }
+  }
+}
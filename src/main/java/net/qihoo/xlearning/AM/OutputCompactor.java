@@ -0,0 +1,332 @@
+package net.qihoo.xlearning.AM;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import net.qihoo.xlearning.util.Utilities;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.text.NumberFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * Merges the small files of the committed container directories of a text STREAM output, before _SUCCESS is
+ * created. The files smaller than the small file size are grouped by their directory under the container
+ * directory and by their compression codec, and each group is packed into files of about the target size under
+ * output/compacted. Uncompressed and gzip files are concatenated as they are, the uncompressed ones only when
+ * they end with a newline; the files of the other codecs are decompressed and compressed again into one stream.
+ * <p>
+ * Each merge is recorded in a manifest under output/_compacting before the merged file is renamed into place,
+ * and the manifest is removed after the sources are deleted. A compaction interrupted by an AM failure is
+ * recovered from the manifests left: the sources of a merged file in place are deleted, otherwise the partial
+ * merged file is.
+ */
+public class OutputCompactor {
+
+  private static final Log LOG = LogFactory.getLog(OutputCompactor.class);
+
+  private static final String COMPACTED_DIR = "compacted";
+
+  private static final String MANIFEST_DIR = "_compacting";
+
+  private static final NumberFormat numFormat = NumberFormat.getInstance();
+
+  static {
+    numFormat.setGroupingUsed(false);
+    numFormat.setMinimumIntegerDigits(5);
+  }
+
+  private final Configuration conf;
+
+  private final long smallFileSize;
+
+  private final long targetSize;
+
+  private final int threadNum;
+
+  private final Pattern pattern;
+
+  private final CompressionCodecFactory codecFactory;
+
+  private final List<String> summaries;
+
+  public OutputCompactor(Configuration conf) {
+    this.conf = conf;
+    this.smallFileSize = conf.getLong(XLearningConfiguration.XLEARNING_OUTPUT_COMPACT_SMALL_FILE_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMPACT_SMALL_FILE_SIZE);
+    this.targetSize = conf.getLong(XLearningConfiguration.XLEARNING_OUTPUT_COMPACT_TARGET_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMPACT_TARGET_SIZE);
+    this.threadNum = Math.max(1, conf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_COMPACT_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMPACT_THREAD_NUMS));
+    this.pattern = Pattern.compile(conf.get(XLearningConfiguration.XLEARNING_OUTPUT_COMPACT_PATTERN, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMPACT_PATTERN));
+    this.codecFactory = new CompressionCodecFactory(conf);
+    this.summaries = Collections.synchronizedList(new ArrayList<String>());
+  }
+
+  /**
+   * @return the summaries of the compactions done, with the file counts before and after
+   */
+  public List<String> getSummaries() {
+    return summaries;
+  }
+
+  /**
+   * Compacts the text output under dfsLocation, the containers outputs must be committed already.
+   */
+  public void compact(String dfsLocation) throws IOException {
+    long startTime = System.currentTimeMillis();
+    Path outputPath = new Path(dfsLocation);
+    final FileSystem fs = outputPath.getFileSystem(conf);
+    final Path manifestDir = new Path(outputPath, MANIFEST_DIR);
+    recover(fs, manifestDir);
+    int filesBefore = 0;
+    Map<String, List<FileStatus>> groups = new TreeMap<>();
+    for (FileStatus containerDir : fs.listStatus(outputPath)) {
+      if (!containerDir.isDirectory() || !containerDir.getPath().getName().startsWith("container_")) {
+        continue;
+      }
+      String containerPrefix = containerDir.getPath().toUri().getPath() + "/";
+      for (FileStatus file : Utilities.listStatusRecursively(containerDir.getPath(), fs, null)) {
+        filesBefore++;
+        String name = file.getPath().getName();
+        if (file.getLen() >= smallFileSize || !pattern.matcher(name).matches()) {
+          continue;
+        }
+        CompressionCodec codec = codecFactory.getCodec(file.getPath());
+        if (codec == null && !endsWithNewLine(fs, file)) {
+          LOG.info("Output file " + file.getPath() + " does not end with a newline, not compacted");
+          continue;
+        }
+        String relative = file.getPath().toUri().getPath().substring(containerPrefix.length());
+        String relativeDir = relative.contains("/") ? relative.substring(0, relative.lastIndexOf('/')) : "";
+        String key = relativeDir + "\t" + (codec == null ? "" : codec.getDefaultExtension());
+        if (!groups.containsKey(key)) {
+          groups.put(key, new ArrayList<FileStatus>());
+        }
+        groups.get(key).add(file);
+      }
+    }
+
+    List<MergeTask> tasks = new ArrayList<>();
+    for (Map.Entry<String, List<FileStatus>> group : groups.entrySet()) {
+      String relativeDir = group.getKey().substring(0, group.getKey().indexOf('\t'));
+      Path mergeDir = relativeDir.isEmpty() ? new Path(outputPath, COMPACTED_DIR) : new Path(new Path(outputPath, COMPACTED_DIR), relativeDir);
+      List<FileStatus> batch = new ArrayList<>();
+      long batchSize = 0L;
+      for (FileStatus file : group.getValue()) {
+        if (!batch.isEmpty() && batchSize + file.getLen() > targetSize) {
+          addTask(tasks, mergeDir, batch);
+          batch = new ArrayList<>();
+          batchSize = 0L;
+        }
+        batch.add(file);
+        batchSize += file.getLen();
+      }
+      addTask(tasks, mergeDir, batch);
+    }
+
+    int merged = 0;
+    int removed = 0;
+    if (!tasks.isEmpty()) {
+      ExecutorService compactPool = Executors.newFixedThreadPool(Math.min(threadNum, tasks.size()),
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("Output-Compact-Thread #%d")
+              .build());
+      try {
+        List<Future<Integer>> futures = new ArrayList<>(tasks.size());
+        int index = 0;
+        for (final MergeTask task : tasks) {
+          // the merged files of an interrupted compaction may be there already
+          Path target;
+          do {
+            target = new Path(task.dir, "part-c-" + numFormat.format(index++) + task.extension);
+          } while (fs.exists(target));
+          final Path mergeTarget = target;
+          final Path manifest = new Path(manifestDir, mergeTarget.getName());
+          futures.add(compactPool.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+              return merge(fs, task, mergeTarget, manifest);
+            }
+          }));
+        }
+        for (Future<Integer> future : futures) {
+          try {
+            removed += future.get();
+            merged++;
+          } catch (ExecutionException e) {
+            // the sources of a failed merge are kept
+            LOG.warn("Compact the output files failed", e.getCause());
+          }
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while compacting " + dfsLocation);
+      } finally {
+        compactPool.shutdownNow();
+      }
+    }
+    fs.delete(manifestDir, true);
+    int filesAfter = filesBefore - removed + merged;
+    String summary = "Compacted output " + dfsLocation + ", " + filesBefore + " files before, " + filesAfter
+        + " files after, cost " + (System.currentTimeMillis() - startTime) + "ms";
+    LOG.info(summary);
+    summaries.add(summary);
+  }
+
+  private void addTask(List<MergeTask> tasks, Path mergeDir, List<FileStatus> batch) {
+    if (batch.size() < 2) {
+      return;
+    }
+    tasks.add(new MergeTask(mergeDir, batch, codecFactory.getCodec(batch.get(0).getPath())));
+  }
+
+  private boolean endsWithNewLine(FileSystem fs, FileStatus file) throws IOException {
+    if (file.getLen() == 0) {
+      return true;
+    }
+    byte[] last = new byte[1];
+    FSDataInputStream in = fs.open(file.getPath());
+    try {
+      in.readFully(file.getLen() - 1, last);
+      return last[0] == '\n';
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Completes or rolls back the merges left by an interrupted compaction.
+   */
+  private void recover(FileSystem fs, Path manifestDir) throws IOException {
+    FileStatus[] manifests;
+    try {
+      manifests = fs.listStatus(manifestDir);
+    } catch (FileNotFoundException e) {
+      return;
+    }
+    for (FileStatus manifest : manifests) {
+      List<Path> paths = new ArrayList<>();
+      FSDataInputStream in = fs.open(manifest.getPath());
+      try {
+        while (in.getPos() < manifest.getLen()) {
+          paths.add(new Path(Text.readString(in)));
+        }
+      } catch (IOException e) {
+        // a manifest cut short is written before its merged file is renamed into place
+        LOG.debug("Read the compaction manifest " + manifest.getPath() + " failed: " + e);
+      } finally {
+        in.close();
+      }
+      if (!paths.isEmpty()) {
+        Path target = paths.get(0);
+        if (fs.exists(target)) {
+          for (Path source : paths.subList(1, paths.size())) {
+            fs.delete(source, false);
+          }
+          LOG.info("Recovered the merge into " + target + ", deleted its sources");
+        } else {
+          fs.delete(tmpTarget(target), false);
+          LOG.info("Rolled back the merge into " + target);
+        }
+      }
+      fs.delete(manifest.getPath(), false);
+    }
+  }
+
+  private static Path tmpTarget(Path target) {
+    return new Path(target.getParent(), "." + target.getName() + ".tmp");
+  }
+
+  private int merge(FileSystem fs, MergeTask task, Path target, Path manifest) throws IOException {
+    boolean concatenate = task.codec == null || task.codec instanceof GzipCodec;
+    // the gzip members are concatenated compressed, the lines of the other files are seen
+    boolean lines = !(task.codec instanceof GzipCodec);
+    Path tmpTarget = tmpTarget(target);
+    OutputStream out = fs.create(tmpTarget, true);
+    try {
+      if (!concatenate) {
+        out = task.codec.createOutputStream(out);
+      }
+      byte[] buffer = new byte[64 * 1024];
+      for (FileStatus file : task.files) {
+        InputStream in = fs.open(file.getPath());
+        try {
+          if (!concatenate) {
+            in = task.codec.createInputStream(in);
+          }
+          int last = '\n';
+          int n;
+          while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+            last = buffer[n - 1];
+          }
+          if (lines && last != '\n') {
+            // the lines of two files are never joined
+            out.write('\n');
+          }
+        } finally {
+          in.close();
+        }
+      }
+      out.close();
+      out = null;
+      FSDataOutputStream manifestOut = fs.create(manifest, true);
+      try {
+        Text.writeString(manifestOut, target.toString());
+        for (FileStatus file : task.files) {
+          Text.writeString(manifestOut, file.getPath().toString());
+        }
+      } finally {
+        manifestOut.close();
+      }
+      if (!fs.rename(tmpTarget, target)) {
+        fs.delete(manifest, false);
+        throw new IOException("Rename " + tmpTarget + " to " + target + " failed");
+      }
+    } catch (IOException e) {
+      IOUtils.closeStream(out);
+      fs.delete(tmpTarget, false);
+      throw e;
+    }
+    for (FileStatus file : task.files) {
+      fs.delete(file.getPath(), false);
+    }
+    fs.delete(manifest, false);
+    LOG.info("Merged " + task.files.size() + " files into " + target);
+    return task.files.size();
+  }
+
+  private static class MergeTask {
+
+    private final Path dir;
+
+    private final List<FileStatus> files;
+
+    private final CompressionCodec codec;
+
+    private final String extension;
+
+    MergeTask(Path dir, List<FileStatus> files, CompressionCodec codec) {
+      this.dir = dir;
+      this.files = files;
+      this.codec = codec;
+      this.extension = codec == null ? "" : codec.getDefaultExtension();
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package net.qihoo.xlearning.AM;
+
+import net.qihoo.xlearning.container.XLearningContainerId;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.util.RackResolver;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Assigns the STREAM input splits to the worker containers, preferring the workers on the hosts holding
+ * the split (node-local), then the workers on the same rack (rack-local), while keeping the bytes of each
+ * worker under the average plus a small slack. Splits which fit no local worker go to the least loaded one.
+ */
+public class StreamSplitAssigner {
+
+  private static final Log LOG = LogFactory.getLog(StreamSplitAssigner.class);
+
+  private static final double LOAD_SLACK = 0.1;
+
+  private final Configuration conf;
+
+  private final List<Container> workers;
+
+  private final Map<String, String> host2Rack;
+
+  private int nodeLocal;
+
+  private int rackLocal;
+
+  private int remote;
+
+  public StreamSplitAssigner(Configuration conf, List<Container> workers) {
+    this.conf = conf;
+    this.workers = workers;
+    this.host2Rack = new HashMap<>();
+    RackResolver.init(conf);
+  }
+
+  public Map<XLearningContainerId, List<InputSplit>> assign(InputSplit[] splits) throws IOException {
+    int workerNum = workers.size();
+    String[] workerHosts = new String[workerNum];
+    String[] workerRacks = new String[workerNum];
+    long[] workerBytes = new long[workerNum];
+    List<List<Integer>> workerSplits = new ArrayList<>(workerNum);
+    for (int i = 0; i < workerNum; i++) {
+      workerHosts[i] = workers.get(i).getNodeId().getHost();
+      workerRacks[i] = resolveRack(workerHosts[i]);
+      workerSplits.add(new ArrayList<Integer>());
+    }
+
+    final long[] splitBytes = new long[splits.length];
+    long totalBytes = 0L;
+    Integer[] order = new Integer[splits.length];
+    for (int i = 0; i < splits.length; i++) {
+      splitBytes[i] = splits[i].getLength();
+      totalBytes += splitBytes[i];
+      order[i] = i;
+    }
+    // place the large splits first so that the small ones can even out the load
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Long.compare(splitBytes[b], splitBytes[a]);
+      }
+    });
+    long capacity = (long) (totalBytes / (double) Math.max(1, workerNum) * (1 + LOAD_SLACK));
+
+    nodeLocal = 0;
+    rackLocal = 0;
+    remote = 0;
+    for (int split : order) {
+      Set<String> splitHosts = new HashSet<>();
+      Set<String> splitRacks = new HashSet<>();
+      for (String location : splits[split].getLocations()) {
+        splitHosts.add(location);
+        splitRacks.add(resolveRack(location));
+      }
+      int chosen = -1;
+      int locality = 0;
+      for (int i = 0; i < workerNum; i++) {
+        if (splitHosts.contains(workerHosts[i]) && workerBytes[i] + splitBytes[split] <= capacity
+            && (chosen < 0 || workerBytes[i] < workerBytes[chosen])) {
+          chosen = i;
+        }
+      }
+      if (chosen < 0) {
+        locality = 1;
+        for (int i = 0; i < workerNum; i++) {
+          if (splitRacks.contains(workerRacks[i]) && workerBytes[i] + splitBytes[split] <= capacity
+              && (chosen < 0 || workerBytes[i] < workerBytes[chosen])) {
+            chosen = i;
+          }
+        }
+      }
+      if (chosen < 0) {
+        locality = 2;
+        for (int i = 0; i < workerNum; i++) {
+          if (chosen < 0 || workerBytes[i] < workerBytes[chosen]) {
+            chosen = i;
+          }
+        }
+        // the least loaded worker may still happen to be local
+        if (splitHosts.contains(workerHosts[chosen])) {
+          locality = 0;
+        } else if (splitRacks.contains(workerRacks[chosen])) {
+          locality = 1;
+        }
+      }
+      if (locality == 0) {
+        nodeLocal++;
+      } else if (locality == 1) {
+        rackLocal++;
+      } else {
+        remote++;
+      }
+      workerBytes[chosen] += splitBytes[split];
+      workerSplits.get(chosen).add(split);
+    }
+
+    Map<XLearningContainerId, List<InputSplit>> assignment = new HashMap<>();
+    for (int i = 0; i < workerNum; i++) {
+      // keep the original order of the splits within each worker
+      Collections.sort(workerSplits.get(i));
+      List<InputSplit> assigned = new ArrayList<>();
+      for (int split : workerSplits.get(i)) {
+        assigned.add(splits[split]);
+      }
+      XLearningContainerId containerId = new XLearningContainerId(workers.get(i).getId());
+      assignment.put(containerId, assigned);
+      LOG.info("put " + assigned.size() + " splits of " + workerBytes[i] + " bytes to " + containerId.toString()
+          + " on " + workerHosts[i]);
+    }
+    LOG.info("Stream input locality: " + getLocalitySummary());
+    return assignment;
+  }
+
+  public String getLocalitySummary() {
+    int total = Math.max(1, nodeLocal + rackLocal + remote);
+    return String.format("node-local %d (%.1f%%), rack-local %d (%.1f%%), remote %d (%.1f%%)",
+        nodeLocal, nodeLocal * 100.0 / total, rackLocal, rackLocal * 100.0 / total, remote, remote * 100.0 / total);
+  }
+
+  private String resolveRack(String host) {
+    String rack = host2Rack.get(host);
+    if (rack == null) {
+      rack = RackResolver.resolve(conf, host).getNetworkLocation();
+      host2Rack.put(host, rack);
+    }
+    return rack;
+  }
+}
@@ -0,0 +1,94 @@
+package net.qihoo.xlearning.AM;
+
+import net.qihoo.xlearning.common.PendingSplit;
+import net.qihoo.xlearning.container.XLearningContainerId;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapred.InputSplit;
+
+import java.util.*;
+
+/**
+ * Central queue of the STREAM input splits, pulled by the workers one split at a time.
+ * Every split appears once per epoch. The splits handed to a worker are kept until the worker
+ * finishes, and put back at the head of the queue when the worker fails. A worker asking when
+ * the queue is empty is told to ask again while another worker is still reading its splits, as
+ * they come back if that worker fails; it gets the end of input once all the workers holding
+ * splits are done reading.
+ */
+public class StreamSplitDispatcher {
+
+  private static final Log LOG = LogFactory.getLog(StreamSplitDispatcher.class);
+
+  private static final InputSplit PENDING = new PendingSplit();
+
+  private final Deque<InputSplit> pending;
+
+  private final Map<XLearningContainerId, List<InputSplit>> dispatched;
+
+  private final Set<XLearningContainerId> idle;
+
+  private final int total;
+
+  public StreamSplitDispatcher(InputSplit[] splits, int epochs) {
+    this.pending = new ArrayDeque<>();
+    for (int epoch = 0; epoch < epochs; epoch++) {
+      pending.addAll(Arrays.asList(splits));
+    }
+    this.dispatched = new HashMap<>();
+    this.idle = new HashSet<>();
+    this.total = pending.size();
+    LOG.info("Dispatching " + splits.length + " splits for " + epochs + " epochs on demand");
+  }
+
+  /**
+   * @return the next split for the worker, a {@link PendingSplit} if the worker should ask again later, or null
+   * if all the splits have been read
+   */
+  public synchronized InputSplit next(XLearningContainerId containerId) {
+    InputSplit split = pending.pollFirst();
+    if (split == null) {
+      idle.add(containerId);
+      for (XLearningContainerId holder : dispatched.keySet()) {
+        if (!idle.contains(holder)) {
+          return PENDING;
+        }
+      }
+      return null;
+    }
+    idle.remove(containerId);
+    List<InputSplit> splits = dispatched.get(containerId);
+    if (splits == null) {
+      splits = new ArrayList<>();
+      dispatched.put(containerId, splits);
+    }
+    splits.add(split);
+    LOG.info("Dispatch split " + (total - pending.size()) + "/" + total + " to " + containerId.toString());
+    return split;
+  }
+
+  public synchronized void finish(XLearningContainerId containerId) {
+    dispatched.remove(containerId);
+    idle.remove(containerId);
+  }
+
+  public synchronized void reclaim(XLearningContainerId containerId) {
+    idle.remove(containerId);
+    List<InputSplit> splits = dispatched.remove(containerId);
+    if (splits == null || splits.isEmpty()) {
+      return;
+    }
+    for (int i = splits.size() - 1; i >= 0; i--) {
+      pending.addFirst(splits.get(i));
+    }
+    LOG.info("Reclaim " + splits.size() + " splits from the failed container " + containerId.toString());
+  }
+
+  /**
+   * @return the number of splits not dispatched to any worker, the splits reclaimed after all the workers ended
+   * their input are never read
+   */
+  public synchronized int getPendingSplits() {
+    return pending.size();
+  }
+}
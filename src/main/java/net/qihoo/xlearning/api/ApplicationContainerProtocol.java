@@ -7,7 +7,7 @@ import org.apache.hadoop.mapred.InputSplit;
 
 public interface ApplicationContainerProtocol extends VersionedProtocol {
 
-  public static final long versionID = 1L;
+  public static final long versionID = 3L;
 
   void reportReservedPort(String host, int port, String role, int index);
 
@@ -21,7 +21,11 @@ public interface ApplicationContainerProtocol extends VersionedProtocol {
 
   InputInfo[] getInputSplit(XLearningContainerId containerId);
 
-  InputSplit[] getStreamInputSplit(XLearningContainerId containerId);
+  String[] getStreamInputNames();
+
+  InputSplit[] getStreamInputSplit(XLearningContainerId containerId, String inputName);
+
+  InputSplit getNextSplit(XLearningContainerId containerId);
 
   OutputInfo[] getOutputLocation();
 
@@ -31,7 +31,15 @@ public interface ApplicationContext {
 
   List<InputInfo> getInputs(XLearningContainerId containerId);
 
-  List<InputSplit> getStreamInputs(XLearningContainerId containerId);
+  List<String> getStreamInputNames();
+
+  List<InputSplit> getStreamInputs(XLearningContainerId containerId, String inputName);
+
+  String getStreamInputLocality();
+
+  InputSplit getNextStreamInput(XLearningContainerId containerId);
+
+  void finishStreamInputs(XLearningContainerId containerId, boolean succeeded);
 
   List<OutputInfo> getOutputs();
 
@@ -39,7 +47,7 @@ public interface ApplicationContext {
 
   String getTensorBoardUrl();
 
-  Map<XLearningContainerId, String> getReporterProgress();
+  Map<XLearningContainerId, Float> getReporterProgress();
 
   Map<XLearningContainerId, String> getContainersAppStartTime();
 
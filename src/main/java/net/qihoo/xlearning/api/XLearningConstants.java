@@ -21,6 +21,10 @@ public interface XLearningConstants {
 
   String STREAM_OUTPUT_DIR = "mapreduce.output.fileoutputformat.outputdir";
 
+  String INPUT_PLAN = "inputPlan";
+
+  String INPUT_MANIFEST = "inputManifest";
+
   enum Environment {
     HADOOP_USER_NAME("HADOOP_USER_NAME"),
 
@@ -44,6 +48,8 @@ public interface XLearningConstants {
 
     XLEARNING_INPUT_FILE_LIST("INPUT_FILE_LIST"),
 
+    XLEARNING_INPUT_MANIFEST("INPUT_MANIFEST"),
+
     XLEARNING_STAGING_LOCATION("XLEARNING_STAGING_LOCATION"),
 
     XLEARNING_CACHE_FILE_LOCATION("XLEARNING_CACHE_FILE_LOCATION"),
@@ -0,0 +1,217 @@
+package net.qihoo.xlearning.common;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.*;
+
+/**
+ * Compresses the written bytes off the writing thread. The bytes are collected in fixed size buffers, and a full
+ * buffer is handed to the compression threads while the writer goes on with the next free buffer, so that the
+ * writer only blocks when all the buffers are in flight. A buffer is free again only after its compressed bytes
+ * are written out, so the memory held is bounded by the buffers and their compressed members. With more than
+ * one compression thread, each buffer is compressed as a separate gzip member of the file, which gzip readers
+ * read as one stream; the other codecs are compressed by a single thread in one stream.
+ */
+public class AsyncCompressionOutputStream extends OutputStream {
+
+  private static final Log LOG = LogFactory.getLog(AsyncCompressionOutputStream.class);
+
+  private static final Block END = new Block(null, null);
+
+  private final OutputStream out;
+
+  private final CompressionCodec codec;
+
+  private final OutputStream compressed;
+
+  private final ExecutorService compressPool;
+
+  private final BlockingQueue<byte[]> freeBuffers;
+
+  private final BlockingQueue<Block> pending;
+
+  private final Thread writerThread;
+
+  private volatile IOException failure;
+
+  private final byte[] single;
+
+  private byte[] buffer;
+
+  private int count;
+
+  private boolean closed;
+
+  public AsyncCompressionOutputStream(OutputStream out, CompressionCodec codec, int bufferSize, int bufferNum,
+                                      int threadNum) throws IOException {
+    this.out = out;
+    this.codec = codec;
+    boolean concatenable = codec instanceof GzipCodec;
+    if (threadNum > 1 && !concatenable) {
+      LOG.warn("Codec " + codec.getClass().getName() + " does not support concatenated members, compress in one thread");
+    }
+    int threads = concatenable ? Math.max(1, threadNum) : 1;
+    // a single thread keeps one compressed stream, the pool compresses each buffer as a member
+    this.compressed = threads == 1 ? codec.createOutputStream(out) : null;
+    this.compressPool = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("Compress-Thread #%d")
+            .build());
+    int buffers = Math.max(2, bufferNum);
+    this.freeBuffers = new ArrayBlockingQueue<>(buffers);
+    for (int i = 1; i < buffers; i++) {
+      freeBuffers.add(new byte[bufferSize]);
+    }
+    this.pending = new LinkedBlockingQueue<>();
+    this.single = new byte[1];
+    this.buffer = new byte[bufferSize];
+    this.count = 0;
+    this.closed = false;
+    this.writerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeCompressed();
+      }
+    }, "Compress-Writer-Thread");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    single[0] = (byte) b;
+    write(single, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    checkFailure();
+    while (len > 0) {
+      int n = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, n);
+      count += n;
+      off += n;
+      len -= n;
+      if (count == buffer.length) {
+        dispatch();
+      }
+    }
+  }
+
+  private void dispatch() throws IOException {
+    final byte[] block = buffer;
+    final int length = count;
+    pending.add(new Block(block, compressPool.submit(new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws IOException {
+        if (compressed != null) {
+          compressed.write(block, 0, length);
+          return null;
+        }
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2);
+        OutputStream memberOut = codec.createOutputStream(member);
+        memberOut.write(block, 0, length);
+        memberOut.close();
+        return member.toByteArray();
+      }
+    })));
+    try {
+      buffer = freeBuffers.take();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for a free compression buffer");
+    }
+    count = 0;
+  }
+
+  private void writeCompressed() {
+    while (true) {
+      Block block;
+      try {
+        block = pending.take();
+      } catch (InterruptedException e) {
+        failure = new InterruptedIOException("Compressed output writer interrupted");
+        return;
+      }
+      if (block == END) {
+        return;
+      }
+      try {
+        byte[] member = block.compressed.get();
+        if (member != null && failure == null) {
+          out.write(member);
+        }
+      } catch (ExecutionException e) {
+        failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+      } catch (Exception e) {
+        failure = e instanceof IOException ? (IOException) e : new IOException(e);
+      } finally {
+        // also after a failure, so that the writer never waits for a lost buffer
+        freeBuffers.add(block.data);
+      }
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Does not hand off the partial buffer, which would only make small compressed members.
+   */
+  @Override
+  public void flush() throws IOException {
+    checkFailure();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (count > 0) {
+        dispatch();
+      }
+      pending.add(END);
+      writerThread.join();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while closing the compressed output");
+    } finally {
+      compressPool.shutdown();
+    }
+    if (failure != null) {
+      IOUtils.closeStream(out);
+      throw failure;
+    }
+    if (compressed != null) {
+      compressed.close();
+    } else {
+      out.close();
+    }
+  }
+
+  private static class Block {
+
+    private final byte[] data;
+
+    private final Future<byte[]> compressed;
+
+    Block(byte[] data, Future<byte[]> compressed) {
+      this.data = data;
+      this.compressed = compressed;
+    }
+  }
+}
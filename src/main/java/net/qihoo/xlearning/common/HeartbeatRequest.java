@@ -1,7 +1,5 @@
 package net.qihoo.xlearning.common;
 
-import org.apache.hadoop.io.BooleanWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
 
@@ -9,77 +7,191 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+/**
+ * The heartbeat of a container. Only the fields changed since the last acknowledged heartbeat are sent, after a
+ * bitmask of the fields present; the fields absent are unchanged on the AM side. All the fields carry absolute
+ * values, so a delta resent after a failed heartbeat is applied again safely.
+ */
 public class HeartbeatRequest implements Writable {
+
+  public static final int STATUS = 1;
+  public static final int INNER_MODEL_SAVED = 1 << 1;
+  public static final int PROGRESS = 1 << 2;
+  public static final int START_TIME = 1 << 3;
+  public static final int FINISH_TIME = 1 << 4;
+  public static final int OUTPUT_UPLOAD = 1 << 5;
+
+  private int fields;
   private XLearningContainerStatus xlearningContainerStatus;
-  private BooleanWritable interResultSavedStatus;
-  private String progressLog;
-  private String containersStartTime;
-  private String containersFinishTime;
+  private boolean interResultSavedStatus;
+  private float progress;
+  private long containersStartTime;
+  private long containersFinishTime;
+  private long outputUploadedBytes;
+  private long outputUploadMillis;
 
   public HeartbeatRequest() {
+    fields = 0;
     xlearningContainerStatus = XLearningContainerStatus.UNDEFINED;
-    interResultSavedStatus = new BooleanWritable(false);
-    progressLog = "";
-    containersStartTime = "";
-    containersFinishTime = "";
+    interResultSavedStatus = false;
+    progress = 0.0f;
+    containersStartTime = 0L;
+    containersFinishTime = 0L;
+    outputUploadedBytes = 0L;
+    outputUploadMillis = 0L;
+  }
+
+  public synchronized boolean hasField(int field) {
+    return (this.fields & field) != 0;
+  }
+
+  /**
+   * Returns the changed fields as a new request and clears them, the heartbeat sends the returned delta.
+   */
+  public synchronized HeartbeatRequest takeDelta() {
+    HeartbeatRequest delta = new HeartbeatRequest();
+    delta.fields = this.fields;
+    delta.xlearningContainerStatus = this.xlearningContainerStatus;
+    delta.interResultSavedStatus = this.interResultSavedStatus;
+    delta.progress = this.progress;
+    delta.containersStartTime = this.containersStartTime;
+    delta.containersFinishTime = this.containersFinishTime;
+    delta.outputUploadedBytes = this.outputUploadedBytes;
+    delta.outputUploadMillis = this.outputUploadMillis;
+    this.fields = 0;
+    return delta;
+  }
+
+  /**
+   * Marks the fields of a delta that was not delivered as changed again, they are sent with their current values.
+   */
+  public synchronized void restoreDelta(HeartbeatRequest delta) {
+    this.fields |= delta.fields;
   }
 
-  public void setXLearningContainerStatus(XLearningContainerStatus xlearningContainerStatus) {
-    this.xlearningContainerStatus = xlearningContainerStatus;
+  public synchronized void setXLearningContainerStatus(XLearningContainerStatus xlearningContainerStatus) {
+    if (this.xlearningContainerStatus != xlearningContainerStatus) {
+      this.xlearningContainerStatus = xlearningContainerStatus;
+      this.fields |= STATUS;
+    }
   }
 
-  public XLearningContainerStatus getXLearningContainerStatus() {
+  public synchronized XLearningContainerStatus getXLearningContainerStatus() {
     return this.xlearningContainerStatus;
   }
 
-  public void setInnerModelSavedStatus(Boolean savedStatus) {
-    this.interResultSavedStatus.set(savedStatus);
+  public synchronized void setInnerModelSavedStatus(Boolean savedStatus) {
+    if (this.interResultSavedStatus != savedStatus) {
+      this.interResultSavedStatus = savedStatus;
+      this.fields |= INNER_MODEL_SAVED;
+    }
   }
 
-  public Boolean getInnerModelSavedStatus() {
-    return this.interResultSavedStatus.get();
+  public synchronized Boolean getInnerModelSavedStatus() {
+    return this.interResultSavedStatus;
   }
 
-  public void setProgressLog(String xlearningProgress) {
-    this.progressLog = xlearningProgress;
+  public synchronized void setProgress(float progress) {
+    if (this.progress != progress) {
+      this.progress = progress;
+      this.fields |= PROGRESS;
+    }
   }
 
-  public String getProgressLog() {
-    return this.progressLog;
+  public synchronized float getProgress() {
+    return this.progress;
   }
 
-  public void setContainersStartTime(String startTime) {
-    this.containersStartTime = startTime;
+  public synchronized void setContainersStartTime(long startTime) {
+    if (this.containersStartTime != startTime) {
+      this.containersStartTime = startTime;
+      this.fields |= START_TIME;
+    }
   }
 
-  public String getContainersStartTime() {
+  public synchronized long getContainersStartTime() {
     return this.containersStartTime;
   }
 
-  public void setContainersFinishTime(String finishTime) {
-    this.containersFinishTime = finishTime;
+  public synchronized void setContainersFinishTime(long finishTime) {
+    if (this.containersFinishTime != finishTime) {
+      this.containersFinishTime = finishTime;
+      this.fields |= FINISH_TIME;
+    }
   }
 
-  public String getContainersFinishTime() {
+  public synchronized long getContainersFinishTime() {
     return this.containersFinishTime;
   }
 
+  public synchronized void setOutputUploadedBytes(long uploadedBytes) {
+    if (this.outputUploadedBytes != uploadedBytes) {
+      this.outputUploadedBytes = uploadedBytes;
+      this.fields |= OUTPUT_UPLOAD;
+    }
+  }
+
+  public synchronized long getOutputUploadedBytes() {
+    return this.outputUploadedBytes;
+  }
+
+  public synchronized void setOutputUploadMillis(long uploadMillis) {
+    if (this.outputUploadMillis != uploadMillis) {
+      this.outputUploadMillis = uploadMillis;
+      this.fields |= OUTPUT_UPLOAD;
+    }
+  }
+
+  public synchronized long getOutputUploadMillis() {
+    return this.outputUploadMillis;
+  }
+
   @Override
-  public void write(DataOutput dataOutput) throws IOException {
-    WritableUtils.writeEnum(dataOutput, this.xlearningContainerStatus);
-    interResultSavedStatus.write(dataOutput);
-    Text.writeString(dataOutput, this.progressLog);
-    Text.writeString(dataOutput, this.containersStartTime);
-    Text.writeString(dataOutput, this.containersFinishTime);
+  public synchronized void write(DataOutput dataOutput) throws IOException {
+    WritableUtils.writeVInt(dataOutput, this.fields);
+    if (hasField(STATUS)) {
+      WritableUtils.writeEnum(dataOutput, this.xlearningContainerStatus);
+    }
+    if (hasField(INNER_MODEL_SAVED)) {
+      dataOutput.writeBoolean(this.interResultSavedStatus);
+    }
+    if (hasField(PROGRESS)) {
+      dataOutput.writeFloat(this.progress);
+    }
+    if (hasField(START_TIME)) {
+      WritableUtils.writeVLong(dataOutput, this.containersStartTime);
+    }
+    if (hasField(FINISH_TIME)) {
+      WritableUtils.writeVLong(dataOutput, this.containersFinishTime);
+    }
+    if (hasField(OUTPUT_UPLOAD)) {
+      WritableUtils.writeVLong(dataOutput, this.outputUploadedBytes);
+      WritableUtils.writeVLong(dataOutput, this.outputUploadMillis);
+    }
   }
 
   @Override
-  public void readFields(DataInput dataInput) throws IOException {
-    this.xlearningContainerStatus = WritableUtils.readEnum(dataInput, XLearningContainerStatus.class);
-    interResultSavedStatus.readFields(dataInput);
-    this.progressLog = Text.readString(dataInput);
-    this.containersStartTime = Text.readString(dataInput);
-    this.containersFinishTime = Text.readString(dataInput);
+  public synchronized void readFields(DataInput dataInput) throws IOException {
+    this.fields = WritableUtils.readVInt(dataInput);
+    if (hasField(STATUS)) {
+      this.xlearningContainerStatus = WritableUtils.readEnum(dataInput, XLearningContainerStatus.class);
+    }
+    if (hasField(INNER_MODEL_SAVED)) {
+      this.interResultSavedStatus = dataInput.readBoolean();
+    }
+    if (hasField(PROGRESS)) {
+      this.progress = dataInput.readFloat();
+    }
+    if (hasField(START_TIME)) {
+      this.containersStartTime = WritableUtils.readVLong(dataInput);
+    }
+    if (hasField(FINISH_TIME)) {
+      this.containersFinishTime = WritableUtils.readVLong(dataInput);
+    }
+    if (hasField(OUTPUT_UPLOAD)) {
+      this.outputUploadedBytes = WritableUtils.readVLong(dataInput);
+      this.outputUploadMillis = WritableUtils.readVLong(dataInput);
+    }
   }
 
 }
@@ -2,44 +2,54 @@ package net.qihoo.xlearning.common;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.hadoop.io.BooleanWritable;
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+/**
+ * The response to a heartbeat, encoded like the request: a bitmask of the fields present, then the fields. A
+ * field is sent only when it differs from its default, so the usual response is a single byte.
+ */
 public class HeartbeatResponse implements Writable {
 
-  private BooleanWritable isXLearningTrainCompleted;
-  private LongWritable interResultTimeStamp;
+  private static final int TRAIN_COMPLETED = 1;
+  private static final int INNER_MODEL_TIMESTAMP = 1 << 1;
+
+  private boolean isXLearningTrainCompleted;
+  private long interResultTimeStamp;
 
   private static final Log LOG = LogFactory.getLog(HeartbeatResponse.class);
 
   public HeartbeatResponse() {
-    isXLearningTrainCompleted = new BooleanWritable(false);
-    interResultTimeStamp = new LongWritable(Long.MIN_VALUE);
+    isXLearningTrainCompleted = false;
+    interResultTimeStamp = Long.MIN_VALUE;
   }
 
   public HeartbeatResponse(Boolean isXLearningTrainCompleted, Long timeStamp) {
-    this.isXLearningTrainCompleted = new BooleanWritable(isXLearningTrainCompleted);
-    this.interResultTimeStamp = new LongWritable(timeStamp);
+    this.isXLearningTrainCompleted = isXLearningTrainCompleted;
+    this.interResultTimeStamp = timeStamp;
   }
 
   public Long getInnerModelTimeStamp() {
-    return interResultTimeStamp.get();
+    return interResultTimeStamp;
   }
 
   public Boolean getIsXLearningTrainCompleted() {
-    return this.isXLearningTrainCompleted.get();
+    return this.isXLearningTrainCompleted;
   }
 
   @Override
   public void write(DataOutput dataOutput) {
     try {
-      isXLearningTrainCompleted.write(dataOutput);
-      interResultTimeStamp.write(dataOutput);
+      int fields = (isXLearningTrainCompleted ? TRAIN_COMPLETED : 0)
+          | (interResultTimeStamp != Long.MIN_VALUE ? INNER_MODEL_TIMESTAMP : 0);
+      WritableUtils.writeVInt(dataOutput, fields);
+      if ((fields & INNER_MODEL_TIMESTAMP) != 0) {
+        WritableUtils.writeVLong(dataOutput, interResultTimeStamp);
+      }
     } catch (IOException e) {
       LOG.error("containerStatus write error: " + e);
     }
@@ -48,8 +58,9 @@ public class HeartbeatResponse implements Writable {
   @Override
   public void readFields(DataInput dataInput) {
     try {
-      isXLearningTrainCompleted.readFields(dataInput);
-      interResultTimeStamp.readFields(dataInput);
+      int fields = WritableUtils.readVInt(dataInput);
+      isXLearningTrainCompleted = (fields & TRAIN_COMPLETED) != 0;
+      interResultTimeStamp = (fields & INNER_MODEL_TIMESTAMP) != 0 ? WritableUtils.readVLong(dataInput) : Long.MIN_VALUE;
     } catch (IOException e) {
       LOG.error("containerStatus read error:" + e);
     }
@@ -0,0 +1,235 @@
+package net.qihoo.xlearning.common;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fans the records out to several record writers, each running on its own thread. The bytes of the Text or
+ * BytesWritable records are appended with a length prefix to byte blocks of about blockSize bytes, and the blocks
+ * are handed to the writers round-robin, so each writer compresses its own part files. The blocks are recycled
+ * once written and the writer threads read the records back into reused writables, so no object is allocated per
+ * record. The order of the records is kept within a block only.
+ */
+public class ParallelRecordWriter<K, V> implements RecordWriter<K, V> {
+
+  private static final Log LOG = LogFactory.getLog(ParallelRecordWriter.class);
+
+  private static final int QUEUE_BLOCKS = 2;
+
+  private static final Block END = new Block(0);
+
+  private final List<RecordWriter<K, V>> writers;
+
+  private final List<BlockingQueue<Block>> queues;
+
+  private final List<Thread> threads;
+
+  private final BlockingQueue<Block> freeBlocks;
+
+  private final int blockSize;
+
+  private final int maxBlocks;
+
+  private volatile IOException failure;
+
+  private Block block;
+
+  private int allocatedBlocks;
+
+  private int next;
+
+  private static final class Block {
+    private byte[] data;
+    private int length;
+    private Object key;
+    private boolean bytes;
+
+    private Block(int capacity) {
+      this.data = new byte[capacity];
+    }
+  }
+
+  public ParallelRecordWriter(List<RecordWriter<K, V>> writers, long blockSize) {
+    this.writers = writers;
+    this.blockSize = (int) Math.max(1L, Math.min(blockSize, Integer.MAX_VALUE - 8));
+    this.queues = new ArrayList<>(writers.size());
+    this.threads = new ArrayList<>(writers.size());
+    // one block filled by the producer, the queued blocks and one block being written by each writer
+    this.maxBlocks = writers.size() * (QUEUE_BLOCKS + 1) + 1;
+    this.freeBlocks = new ArrayBlockingQueue<>(maxBlocks);
+    for (int i = 0; i < writers.size(); i++) {
+      final RecordWriter<K, V> writer = writers.get(i);
+      final BlockingQueue<Block> queue = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          writeBlocks(writer, queue);
+        }
+      }, "Output-Writer-Thread #" + i);
+      thread.setDaemon(true);
+      thread.start();
+      queues.add(queue);
+      threads.add(thread);
+    }
+    this.allocatedBlocks = 0;
+    this.next = 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void writeBlocks(RecordWriter<K, V> writer, BlockingQueue<Block> queue) {
+    Text text = new Text();
+    BytesWritable bytes = new BytesWritable();
+    try {
+      while (true) {
+        Block records = queue.take();
+        if (records == END) {
+          break;
+        }
+        try {
+          // keep draining after a failure so that the producer never blocks on a full queue
+          if (failure == null) {
+            byte[] data = records.data;
+            int pos = 0;
+            while (pos < records.length) {
+              int length = ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16)
+                  | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+              pos += 4;
+              if (records.bytes) {
+                bytes.setSize(length);
+                System.arraycopy(data, pos, bytes.getBytes(), 0, length);
+                writer.write((K) records.key, (V) bytes);
+              } else {
+                text.set(data, pos, length);
+                writer.write((K) records.key, (V) text);
+              }
+              pos += length;
+            }
+          }
+        } catch (Throwable t) {
+          setFailure(t);
+        } finally {
+          records.length = 0;
+          records.key = null;
+          freeBlocks.offer(records);
+        }
+      }
+      writer.close(Reporter.NULL);
+    } catch (InterruptedException e) {
+      setFailure(new InterruptedIOException("Output writer interrupted"));
+    } catch (Throwable t) {
+      setFailure(t);
+    }
+  }
+
+  private void setFailure(Throwable t) {
+    if (failure == null) {
+      failure = t instanceof IOException ? (IOException) t : new IOException("Output writer failed", t);
+    }
+  }
+
+  public void write(K key, V value) throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+    byte[] data;
+    int length;
+    boolean isBytes;
+    if (value instanceof Text) {
+      Text text = (Text) value;
+      data = text.getBytes();
+      length = text.getLength();
+      isBytes = false;
+    } else if (value instanceof BytesWritable) {
+      BytesWritable bytes = (BytesWritable) value;
+      data = bytes.getBytes();
+      length = bytes.getLength();
+      isBytes = true;
+    } else {
+      throw new IOException("Unsupported record of the parallel output writers: "
+          + (value == null ? null : value.getClass().getName()));
+    }
+    // a block carries a single key and record type, the stream output writes a constant key
+    if (block != null && block.length > 0
+        && (block.key != key || block.bytes != isBytes || block.length + 4 + length > block.data.length)) {
+      dispatch();
+    }
+    if (block == null) {
+      block = takeFreeBlock();
+    }
+    if (block.length + 4 + length > block.data.length) {
+      // a record larger than a block
+      block.data = Arrays.copyOf(block.data, 4 + length);
+    }
+    block.key = key;
+    block.bytes = isBytes;
+    byte[] blockData = block.data;
+    int pos = block.length;
+    blockData[pos] = (byte) (length >>> 24);
+    blockData[pos + 1] = (byte) (length >>> 16);
+    blockData[pos + 2] = (byte) (length >>> 8);
+    blockData[pos + 3] = (byte) length;
+    System.arraycopy(data, 0, blockData, pos + 4, length);
+    block.length = pos + 4 + length;
+    if (block.length >= blockSize) {
+      dispatch();
+    }
+  }
+
+  private Block takeFreeBlock() throws IOException {
+    Block free = freeBlocks.poll();
+    if (free != null) {
+      return free;
+    }
+    if (allocatedBlocks < maxBlocks) {
+      allocatedBlocks++;
+      return new Block(blockSize);
+    }
+    try {
+      return freeBlocks.take();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for a free output block");
+    }
+  }
+
+  private void dispatch() throws IOException {
+    try {
+      queues.get(next).put(block);
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while handing the records to the output writers");
+    }
+    block = null;
+    next = (next + 1) % queues.size();
+  }
+
+  public void close(Reporter reporter) throws IOException {
+    if (block != null && block.length > 0) {
+      dispatch();
+    }
+    try {
+      for (BlockingQueue<Block> queue : queues) {
+        queue.put(END);
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while closing the output writers");
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    LOG.info("Closed " + writers.size() + " parallel output writers");
+  }
+}
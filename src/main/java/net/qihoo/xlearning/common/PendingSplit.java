@@ -0,0 +1,35 @@
+package net.qihoo.xlearning.common;
+
+import org.apache.hadoop.mapred.InputSplit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+
+/**
+ * Returned by the AM for the next stream input split when no split is left for now, but the splits dispatched
+ * to other workers may still come back if those workers fail. The worker asks again later instead of ending its
+ * input.
+ */
+public class PendingSplit implements InputSplit {
+
+  public PendingSplit() {
+  }
+
+  @Override
+  public long getLength() {
+    return 0L;
+  }
+
+  @Override
+  public String[] getLocations() {
+    return new String[0];
+  }
+
+  @Override
+  public void write(DataOutput dataOutput) {
+  }
+
+  @Override
+  public void readFields(DataInput dataInput) {
+  }
+}
@@ -0,0 +1,45 @@
+package net.qihoo.xlearning.common;
+
+import org.apache.hadoop.util.PureJavaCrc32C;
+
+/**
+ * The masked CRC32C of the TFRecord format, checked on both the length and the data of each record.
+ */
+final class TFRecordCrc {
+
+  private static final int MASK_DELTA = 0xa282ead8;
+
+  private TFRecordCrc() {
+  }
+
+  static int mask(PureJavaCrc32C crc, byte[] b, int off, int len) {
+    crc.reset();
+    crc.update(b, off, len);
+    int value = (int) crc.getValue();
+    return ((value >>> 15) | (value << 17)) + MASK_DELTA;
+  }
+
+  static long getLong(byte[] b, int off) {
+    long value = 0;
+    for (int i = 7; i >= 0; i--) {
+      value = (value << 8) | (b[off + i] & 0xff);
+    }
+    return value;
+  }
+
+  static int getInt(byte[] b, int off) {
+    return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+  }
+
+  static void putLong(byte[] b, int off, long value) {
+    for (int i = 0; i < 8; i++) {
+      b[off + i] = (byte) (value >>> (8 * i));
+    }
+  }
+
+  static void putInt(byte[] b, int off, int value) {
+    for (int i = 0; i < 4; i++) {
+      b[off + i] = (byte) (value >>> (8 * i));
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package net.qihoo.xlearning.common;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapred.*;
+import org.apache.hadoop.util.PureJavaCrc32C;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the records of TFRecord files, the key being the offset of the record in the file and the value
+ * the record data. The uncompressed files are split; a split after the beginning of the file starts at
+ * the first offset holding a record whose length and data both match their CRC.
+ */
+public class TFRecordInputFormat extends FileInputFormat<LongWritable, BytesWritable> {
+
+  @Override
+  protected boolean isSplitable(FileSystem fs, Path file) {
+    return new CompressionCodecFactory(fs.getConf()).getCodec(file) == null;
+  }
+
+  @Override
+  public RecordReader<LongWritable, BytesWritable> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
+      throws IOException {
+    reporter.setStatus(split.toString());
+    return new TFRecordReader(job, (FileSplit) split);
+  }
+
+  public static class TFRecordReader implements RecordReader<LongWritable, BytesWritable> {
+
+    private static final Log LOG = LogFactory.getLog(TFRecordReader.class);
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final int FOOTER_SIZE = 4;
+
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private final Path file;
+
+    private final long start;
+
+    private final long end;
+
+    private final FSDataInputStream fileIn;
+
+    private final InputStream in;
+
+    private final byte[] header;
+
+    private final byte[] footer;
+
+    private final PureJavaCrc32C crc;
+
+    private long pos;
+
+    public TFRecordReader(JobConf job, FileSplit split) throws IOException {
+      this.file = split.getPath();
+      this.header = new byte[HEADER_SIZE];
+      this.footer = new byte[FOOTER_SIZE];
+      this.crc = new PureJavaCrc32C();
+      FileSystem fs = file.getFileSystem(job);
+      this.fileIn = fs.open(file);
+      CompressionCodec codec = new CompressionCodecFactory(job).getCodec(file);
+      if (codec != null) {
+        this.in = codec.createInputStream(fileIn);
+        this.start = 0L;
+        this.end = Long.MAX_VALUE;
+        this.pos = 0L;
+      } else {
+        this.in = fileIn;
+        this.start = split.getStart();
+        this.end = start + split.getLength();
+        this.pos = start == 0 ? 0L : resync(start, fs.getFileStatus(file).getLen());
+        fileIn.seek(pos);
+      }
+    }
+
+    private long resync(long offset, long fileLength) throws IOException {
+      byte[] window = new byte[WINDOW_SIZE];
+      long windowStart = offset;
+      while (windowStart + HEADER_SIZE <= fileLength) {
+        int windowLength = (int) Math.min(window.length, fileLength - windowStart);
+        fileIn.readFully(windowStart, window, 0, windowLength);
+        for (int i = 0; i + HEADER_SIZE <= windowLength; i++) {
+          long length = TFRecordCrc.getLong(window, i);
+          if (length < 0 || length > Integer.MAX_VALUE - FOOTER_SIZE
+              || length > fileLength - windowStart - i - HEADER_SIZE - FOOTER_SIZE
+              || TFRecordCrc.getInt(window, i + 8) != TFRecordCrc.mask(crc, window, i, 8)) {
+            continue;
+          }
+          if (verifyData(windowStart + i + HEADER_SIZE, (int) length)) {
+            LOG.info("Split of " + file + " at " + offset + " starts from the record at " + (windowStart + i));
+            return windowStart + i;
+          }
+        }
+        windowStart += windowLength - HEADER_SIZE + 1;
+      }
+      return fileLength;
+    }
+
+    private boolean verifyData(long offset, int length) throws IOException {
+      byte[] data = new byte[length + FOOTER_SIZE];
+      fileIn.readFully(offset, data, 0, data.length);
+      return TFRecordCrc.getInt(data, length) == TFRecordCrc.mask(crc, data, 0, length);
+    }
+
+    @Override
+    public synchronized boolean next(LongWritable key, BytesWritable value) throws IOException {
+      if (pos >= end) {
+        return false;
+      }
+      int n = read(header, HEADER_SIZE);
+      if (n == 0) {
+        return false;
+      }
+      if (n < HEADER_SIZE) {
+        throw new EOFException("Truncated record header in " + file + " at " + pos);
+      }
+      long length = TFRecordCrc.getLong(header, 0);
+      if (TFRecordCrc.getInt(header, 8) != TFRecordCrc.mask(crc, header, 0, 8)) {
+        throw new IOException("Length checksum mismatch of the record in " + file + " at " + pos);
+      }
+      if (length < 0 || length > Integer.MAX_VALUE - FOOTER_SIZE) {
+        throw new IOException("Invalid record length " + length + " in " + file + " at " + pos);
+      }
+      value.setSize((int) length);
+      readFully(value.getBytes(), (int) length);
+      readFully(footer, FOOTER_SIZE);
+      if (TFRecordCrc.getInt(footer, 0) != TFRecordCrc.mask(crc, value.getBytes(), 0, (int) length)) {
+        throw new IOException("Data checksum mismatch of the record in " + file + " at " + pos);
+      }
+      key.set(pos);
+      pos += HEADER_SIZE + length + FOOTER_SIZE;
+      return true;
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+      if (read(b, len) < len) {
+        throw new EOFException("Truncated record in " + file + " at " + pos);
+      }
+    }
+
+    private int read(byte[] b, int len) throws IOException {
+      int n = 0;
+      while (n < len) {
+        int count = in.read(b, n, len - n);
+        if (count < 0) {
+          break;
+        }
+        n += count;
+      }
+      return n;
+    }
+
+    @Override
+    public LongWritable createKey() {
+      return new LongWritable();
+    }
+
+    @Override
+    public BytesWritable createValue() {
+      return new BytesWritable();
+    }
+
+    @Override
+    public synchronized long getPos() throws IOException {
+      return pos;
+    }
+
+    @Override
+    public synchronized float getProgress() throws IOException {
+      if (end == Long.MAX_VALUE || end == start) {
+        return 0.0f;
+      }
+      return Math.min(1.0f, (pos - start) / (float) (end - start));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package net.qihoo.xlearning.common;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.PureJavaCrc32C;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+
+/**
+ * Writes the values as TFRecord files, rolling to a new file once the current one holds
+ * mapred.reduce.max.size.per.file bytes of records. The keys are ignored.
+ */
+public class TFRecordOutputFormat<K, V> extends FileOutputFormat<K, V> {
+  private static final long SPLIT_SIZE = 512 * 1024 * 1024; //512M
+
+  protected static final NumberFormat numFormat = NumberFormat.getInstance();
+
+  static {
+    numFormat.setGroupingUsed(false);
+    numFormat.setMinimumIntegerDigits(3);
+  }
+
+  @Override
+  public RecordWriter<K, V> getRecordWriter(FileSystem ignored, JobConf job, String name, Progressable progress)
+      throws IOException {
+    CompressionCodec codec = null;
+    if (getCompressOutput(job)) {
+      Class<? extends CompressionCodec> codecClass = getOutputCompressorClass(job, GzipCodec.class);
+      codec = ReflectionUtils.newInstance(codecClass, job);
+    }
+    return new TFRecordWriter<>(job, name, codec, job.getLong(TextMultiOutputFormat.MR_REDUCE_MAX_FILE_PER_FILE, SPLIT_SIZE));
+  }
+
+  public static class TFRecordWriter<K, V> implements RecordWriter<K, V> {
+    private final JobConf jobConf;
+    private final String fileName;
+    private final CompressionCodec codec;
+    private final long splitSize;
+    private final byte[] header;
+    private final byte[] footer;
+    private final PureJavaCrc32C crc;
+    private OutputStream out;
+    private long written;
+    private int fileNum;
+
+    public TFRecordWriter(JobConf jobConf, String fileName, CompressionCodec codec, long splitSize) throws IOException {
+      this.jobConf = jobConf;
+      this.fileName = fileName;
+      this.codec = codec;
+      this.splitSize = splitSize;
+      this.header = new byte[12];
+      this.footer = new byte[4];
+      this.crc = new PureJavaCrc32C();
+      this.fileNum = 0;
+      this.out = createFile();
+    }
+
+    private OutputStream createFile() throws IOException {
+      String extension = codec == null ? "" : codec.getDefaultExtension();
+      Path file = FileOutputFormat.getTaskOutputPath(jobConf, fileName + "-" + numFormat.format(fileNum++) + extension);
+      OutputStream fileOut = file.getFileSystem(jobConf).create(file, null);
+      written = 0L;
+      return codec == null ? fileOut : codec.createOutputStream(fileOut);
+    }
+
+    public synchronized void write(K key, V value) throws IOException {
+      if (value == null) {
+        return;
+      }
+      if (splitSize < written) {
+        out.close();
+        out = createFile();
+      }
+      if (value instanceof BytesWritable) {
+        BytesWritable bytes = (BytesWritable) value;
+        writeRecord(bytes.getBytes(), bytes.getLength());
+      } else if (value instanceof Text) {
+        Text text = (Text) value;
+        writeRecord(text.getBytes(), text.getLength());
+      } else {
+        byte[] record = value.toString().getBytes(StandardCharsets.UTF_8);
+        writeRecord(record, record.length);
+      }
+    }
+
+    private void writeRecord(byte[] data, int length) throws IOException {
+      TFRecordCrc.putLong(header, 0, length);
+      TFRecordCrc.putInt(header, 8, TFRecordCrc.mask(crc, header, 0, 8));
+      TFRecordCrc.putInt(footer, 0, TFRecordCrc.mask(crc, data, 0, length));
+      out.write(header);
+      out.write(data, 0, length);
+      out.write(footer);
+      written += header.length + length + footer.length;
+    }
+
+    public synchronized void close(Reporter reporter) throws IOException {
+      out.close();
+    }
+  }
+}
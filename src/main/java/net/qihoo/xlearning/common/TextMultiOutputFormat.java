@@ -1,5 +1,6 @@
 package net.qihoo.xlearning.common;
 
+import net.qihoo.xlearning.conf.XLearningConfiguration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.FileSystem;
@@ -49,7 +50,7 @@ public class TextMultiOutputFormat<K, V> extends TextOutputFormat<K, V> {
      * Writes the specified byte (the low eight bits of the argument
      * <code>b</code>) to the underlying output stream. If no exception
      * is thrown, the counter <code>written</code> is incremented by
-     * <code>1</code>.
+     * <code>1</code>. Not synchronized, the record writer holds the lock.
      * <p>
      * Implements the <code>write</code> method of <code>OutputStream</code>.
      *
@@ -57,8 +58,8 @@ public class TextMultiOutputFormat<K, V> extends TextOutputFormat<K, V> {
      * @throws IOException if an I/O error occurs.
      * @see java.io.FilterOutputStream#out
      */
-    public synchronized void write(int b) throws IOException {
-      super.write(b);
+    public void write(int b) throws IOException {
+      out.write(b);
       incCountNew((long) 1);
     }
 
@@ -74,9 +75,9 @@ public class TextMultiOutputFormat<K, V> extends TextOutputFormat<K, V> {
      * @throws IOException if an I/O error occurs.
      * @see java.io.FilterOutputStream#out
      */
-    public synchronized void write(byte b[], int off, int len)
+    public void write(byte b[], int off, int len)
         throws IOException {
-      super.write(b, off, len);
+      out.write(b, off, len);
       incCountNew((long) len);
     }
 
@@ -126,7 +127,7 @@ public class TextMultiOutputFormat<K, V> extends TextOutputFormat<K, V> {
       if (splitSize < out.getSize()) {
         //	  writer.flush();
         writer.close(null);
-        out = new NewDataOutputStream(codec.createOutputStream(createFile()));
+        out = new NewDataOutputStream(createCompressedFile());
         writer = new LineRecordWriter<K, V>(out, keyValueSeparator);
       }
       writer.write(key, value);
@@ -155,23 +156,31 @@ public class TextMultiOutputFormat<K, V> extends TextOutputFormat<K, V> {
       throws FileAlreadyExistsException,
       InvalidJobConfException, IOException {
     super.checkOutputSpecs(ignored, job);
-
-    if (!getCompressOutput(job)) {
-      throw new InvalidJobConfException("TextMultiOutputFormat only for compressed mode.");
-    }
-
   }
 
   public FSDataOutputStream createFile()
       throws IOException {
     Path file;
 
-    file = FileOutputFormat.getTaskOutputPath(jobConf, fileName + getFileExtention(fileNum++) + codec.getDefaultExtension());
+    file = FileOutputFormat.getTaskOutputPath(jobConf, fileName + getFileExtention(fileNum++) + (codec == null ? "" : codec.getDefaultExtension()));
     FileSystem fs = file.getFileSystem(jobConf);
 
     return fs.create(file, null);
   }
 
+  private OutputStream createCompressedFile() throws IOException {
+    if (codec == null) {
+      return createFile();
+    }
+    if (jobConf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_ASYNC_COMPRESS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_ASYNC_COMPRESS)) {
+      return new AsyncCompressionOutputStream(createFile(), codec,
+          jobConf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_ASYNC_COMPRESS_BUFFER_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_ASYNC_COMPRESS_BUFFER_SIZE),
+          jobConf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_ASYNC_COMPRESS_BUFFER_NUM, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_ASYNC_COMPRESS_BUFFER_NUM),
+          jobConf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_ASYNC_COMPRESS_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_ASYNC_COMPRESS_THREAD_NUMS));
+    }
+    return codec.createOutputStream(createFile());
+  }
+
   public RecordWriter<K, V> getRecordWriter(FileSystem ignored,
                                             JobConf job,
                                             String name,
@@ -183,13 +192,15 @@ public class TextMultiOutputFormat<K, V> extends TextOutputFormat<K, V> {
     jobConf = job;
     fileName = name;
     jobProgress = progress;
-    Class<? extends CompressionCodec> codecClass =
-        getOutputCompressorClass(job, GzipCodec.class);
-    // create the named codec
-    codec = ReflectionUtils.newInstance(codecClass, job);
-    FSDataOutputStream fileOut = createFile();
-
-    return new MultiSplitRecordWriter<K, V>(new NewDataOutputStream(codec.createOutputStream(fileOut)),
+    if (getCompressOutput(job)) {
+      Class<? extends CompressionCodec> codecClass =
+          getOutputCompressorClass(job, GzipCodec.class);
+      // create the named codec
+      codec = ReflectionUtils.newInstance(codecClass, job);
+    } else {
+      codec = null;
+    }
+    return new MultiSplitRecordWriter<K, V>(new NewDataOutputStream(createCompressedFile()),
         keyValueSeparator, ignoreSeparatorOnNull);
 
   }
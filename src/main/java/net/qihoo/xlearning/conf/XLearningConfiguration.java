@@ -123,6 +123,86 @@ public class XLearningConfiguration extends YarnConfiguration {
 
   public static final Class<? extends OutputFormat> DEFAULT_XLEARNING_OUTPUTF0RMAT_CLASS = TextMultiOutputFormat.class;
 
+  public static final String XLEARNING_OUTPUT_ASYNC_COMPRESS = "xlearning.output.async.compress";
+
+  public static final boolean DEFAULT_XLEARNING_OUTPUT_ASYNC_COMPRESS = false;
+
+  public static final String XLEARNING_OUTPUT_ASYNC_COMPRESS_BUFFER_SIZE = "xlearning.output.async.compress.buffer.size";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_ASYNC_COMPRESS_BUFFER_SIZE = 4 * 1024 * 1024;
+
+  public static final String XLEARNING_OUTPUT_ASYNC_COMPRESS_BUFFER_NUM = "xlearning.output.async.compress.buffer.num";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_ASYNC_COMPRESS_BUFFER_NUM = 4;
+
+  public static final String XLEARNING_OUTPUT_ASYNC_COMPRESS_THREAD_NUMS = "xlearning.output.async.compress.thread.nums";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_ASYNC_COMPRESS_THREAD_NUMS = 1;
+
+  public static final String XLEARNING_OUTPUT_STREAM_CODEC = "xlearning.output.stream.codec";
+
+  public static final String DEFAULT_XLEARNING_OUTPUT_STREAM_CODEC = "gzip";
+
+  public static final String XLEARNING_OUTPUT_STREAM_CODEC_LEVEL = "xlearning.output.stream.codec.level";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_STREAM_CODEC_LEVEL = -1;
+
+  public static final String XLEARNING_OUTPUT_STREAM_FILE_SIZE = "xlearning.output.stream.file.size";
+
+  public static final long DEFAULT_XLEARNING_OUTPUT_STREAM_FILE_SIZE = 512 * 1024 * 1024;
+
+  public static final String XLEARNING_OUTPUT_STREAM_WRITER_NUMS = "xlearning.output.stream.writer.nums";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_STREAM_WRITER_NUMS = 1;
+
+  public static final String XLEARNING_OUTPUT_STREAM_WRITER_BLOCK_SIZE = "xlearning.output.stream.writer.block.size";
+
+  public static final long DEFAULT_XLEARNING_OUTPUT_STREAM_WRITER_BLOCK_SIZE = 4 * 1024 * 1024;
+
+  public static final String XLEARNING_OUTPUT_STREAM_ROUTE_ENABLE = "xlearning.output.stream.route.enable";
+
+  public static final boolean DEFAULT_XLEARNING_OUTPUT_STREAM_ROUTE_ENABLE = false;
+
+  public static final String XLEARNING_OUTPUT_STREAM_ROUTE_DELIMITER = "xlearning.output.stream.route.delimiter";
+
+  public static final String DEFAULT_XLEARNING_OUTPUT_STREAM_ROUTE_DELIMITER = "\\t";
+
+  public static final String XLEARNING_OUTPUT_STREAM_ROUTE_MAX = "xlearning.output.stream.route.max";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_STREAM_ROUTE_MAX = 100;
+
+  public static final String XLEARNING_OUTPUT_COMMIT_THREAD_NUMS = "xlearning.output.commit.thread.nums";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_COMMIT_THREAD_NUMS = 20;
+
+  public static final String XLEARNING_OUTPUT_COMMIT_RETRY = "xlearning.output.commit.retry";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_COMMIT_RETRY = 3;
+
+  public static final String XLEARNING_OUTPUT_COMMIT_DIRECT = "xlearning.output.commit.direct";
+
+  public static final boolean DEFAULT_XLEARNING_OUTPUT_COMMIT_DIRECT = false;
+
+  public static final String XLEARNING_OUTPUT_COMPACT_ENABLE = "xlearning.output.compact.enable";
+
+  public static final boolean DEFAULT_XLEARNING_OUTPUT_COMPACT_ENABLE = false;
+
+  public static final String XLEARNING_OUTPUT_COMPACT_SMALL_FILE_SIZE = "xlearning.output.compact.small.file.size";
+
+  public static final long DEFAULT_XLEARNING_OUTPUT_COMPACT_SMALL_FILE_SIZE = 32 * 1024 * 1024;
+
+  public static final String XLEARNING_OUTPUT_COMPACT_TARGET_SIZE = "xlearning.output.compact.target.size";
+
+  public static final long DEFAULT_XLEARNING_OUTPUT_COMPACT_TARGET_SIZE = 256 * 1024 * 1024;
+
+  public static final String XLEARNING_OUTPUT_COMPACT_THREAD_NUMS = "xlearning.output.compact.thread.nums";
+
+  public static final int DEFAULT_XLEARNING_OUTPUT_COMPACT_THREAD_NUMS = 10;
+
+  public static final String XLEARNING_OUTPUT_COMPACT_PATTERN = "xlearning.output.compact.pattern";
+
+  public static final String DEFAULT_XLEARNING_OUTPUT_COMPACT_PATTERN = "part-.*";
+
   public static final String XLEARNING_INPUTFILE_RENAME = "xlearning.inputfile.rename";
 
   public static final Boolean DEFAULT_XLEARNING_INPUTFILE_RENAME = false;
@@ -143,6 +223,66 @@ public class XLearningConfiguration extends YarnConfiguration {
 
   public static final Boolean DEFAULT_XLEARNING_INPUT_STREAM_SHUFFLE = false;
 
+  public static final String XLEARNING_INPUT_STREAM_LOCALITY = "xlearning.input.stream.locality";
+
+  public static final boolean DEFAULT_XLEARNING_INPUT_STREAM_LOCALITY = false;
+
+  public static final String XLEARNING_INPUT_STREAM_DYNAMIC = "xlearning.input.stream.dynamic";
+
+  public static final boolean DEFAULT_XLEARNING_INPUT_STREAM_DYNAMIC = false;
+
+  public static final String XLEARNING_INPUT_BALANCE = "xlearning.input.balance";
+
+  public static final boolean DEFAULT_XLEARNING_INPUT_BALANCE = false;
+
+  public static final String XLEARNING_INPUT_LISTING_THREAD_NUMS = "xlearning.input.listing.thread.nums";
+
+  public static final int DEFAULT_XLEARNING_INPUT_LISTING_THREAD_NUMS = 16;
+
+  public static final String XLEARNING_INPUT_FILTER_HIDDEN = "xlearning.input.filter.hidden";
+
+  public static final boolean DEFAULT_XLEARNING_INPUT_FILTER_HIDDEN = true;
+
+  public static final String XLEARNING_STREAM_READER_THREAD_NUMS = "xlearning.stream.reader.thread.nums";
+
+  public static final int DEFAULT_XLEARNING_STREAM_READER_THREAD_NUMS = 2;
+
+  public static final String XLEARNING_STREAM_PREFETCH_SPLITS = "xlearning.stream.prefetch.splits";
+
+  public static final int DEFAULT_XLEARNING_STREAM_PREFETCH_SPLITS = 2;
+
+  public static final String XLEARNING_STREAM_BUFFER_SIZE = "xlearning.stream.buffer.size";
+
+  public static final int DEFAULT_XLEARNING_STREAM_BUFFER_SIZE = 1024 * 1024;
+
+  public static final String XLEARNING_STREAM_BUFFER_NUM = "xlearning.stream.buffer.num";
+
+  public static final int DEFAULT_XLEARNING_STREAM_BUFFER_NUM = 8;
+
+  public static final String XLEARNING_STREAM_RECORD_FORMAT = "xlearning.stream.record.format";
+
+  public static final String DEFAULT_XLEARNING_STREAM_RECORD_FORMAT = "TEXT";
+
+  public static final String XLEARNING_STREAM_ARROW_SCHEMA = "xlearning.stream.arrow.schema";
+
+  public static final String XLEARNING_STREAM_ARROW_DELIMITER = "xlearning.stream.arrow.delimiter";
+
+  public static final String DEFAULT_XLEARNING_STREAM_ARROW_DELIMITER = ",";
+
+  public static final String XLEARNING_STREAM_ARROW_BATCH_SIZE = "xlearning.stream.arrow.batch.size";
+
+  public static final int DEFAULT_XLEARNING_STREAM_ARROW_BATCH_SIZE = 4096;
+
+  public static final String XLEARNING_STREAM_TRANSPORT = "xlearning.stream.transport";
+
+  public static final String DEFAULT_XLEARNING_STREAM_TRANSPORT = "PIPE";
+
+  public static final String XLEARNING_STREAM_SHM_DIR = "xlearning.stream.shm.dir";
+
+  public static final String XLEARNING_STREAM_SHM_SIZE = "xlearning.stream.shm.size";
+
+  public static final int DEFAULT_XLEARNING_STREAM_SHM_SIZE = 64;
+
   public static final String XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT= "xlearning.inputformat.cachesize.limit";
 
   public static final int DEFAULT_XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT = 100 * 1024;
@@ -153,7 +293,15 @@ public class XLearningConfiguration extends YarnConfiguration {
 
   public static final String XLEARNING_INPUTFORMAT_CACHEFILE_NAME = "xlearning.inputformat.cachefile.name";
 
-  public static final String DEFAULT_XLEARNING_INPUTFORMAT_CACHEFILE_NAME = "inputformatCache.gz";
+  public static final String DEFAULT_XLEARNING_INPUTFORMAT_CACHEFILE_NAME = "inputformatCache";
+
+  public static final String XLEARNING_INPUTFORMAT_CACHE_CODEC = "xlearning.inputformat.cache.codec";
+
+  public static final String DEFAULT_XLEARNING_INPUTFORMAT_CACHE_CODEC = "";
+
+  public static final String XLEARNING_INPUTFORMAT_CACHE_SHUFFLE = "xlearning.inputformat.cache.shuffle";
+
+  public static final boolean DEFAULT_XLEARNING_INPUTFORMAT_CACHE_SHUFFLE = false;
 
   public static final String XLEARNING_INTERREAULST_DIR = "xlearning.interresult.dir";
 
@@ -248,6 +396,50 @@ public class XLearningConfiguration extends YarnConfiguration {
 
   public static final int DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_NUMS = 10;
 
+  public static final String XLEARNING_DOWNLOAD_FILE_RANGE_SIZE = "xlearning.download.file.range.size";
+
+  public static final long DEFAULT_XLEARNING_DOWNLOAD_FILE_RANGE_SIZE = 128 * 1024 * 1024;
+
+  public static final String XLEARNING_DOWNLOAD_FILE_RANGE_THREAD_NUMS = "xlearning.download.file.range.thread.nums";
+
+  public static final int DEFAULT_XLEARNING_DOWNLOAD_FILE_RANGE_THREAD_NUMS = 8;
+
+  public static final String XLEARNING_DOWNLOAD_FILE_CHECKSUM = "xlearning.download.file.checksum";
+
+  public static final boolean DEFAULT_XLEARNING_DOWNLOAD_FILE_CHECKSUM = false;
+
+  public static final String XLEARNING_UPLOAD_FILE_RETRY = "xlearning.upload.file.retry";
+
+  public static final int DEFAULT_XLEARNING_UPLOAD_FILE_RETRY = 3;
+
+  public static final String XLEARNING_UPLOAD_FILE_THREAD_NUMS = "xlearning.upload.file.thread.nums";
+
+  public static final int DEFAULT_XLEARNING_UPLOAD_FILE_THREAD_NUMS = 10;
+
+  public static final String XLEARNING_UPLOAD_INCREMENTAL_ENABLE = "xlearning.upload.incremental.enable";
+
+  public static final boolean DEFAULT_XLEARNING_UPLOAD_INCREMENTAL_ENABLE = false;
+
+  public static final String XLEARNING_UPLOAD_INCREMENTAL_INTERVAL = "xlearning.upload.incremental.interval";
+
+  public static final long DEFAULT_XLEARNING_UPLOAD_INCREMENTAL_INTERVAL = 30 * 1000;
+
+  public static final String XLEARNING_UPLOAD_INCREMENTAL_IDLE_TIME = "xlearning.upload.incremental.idle.time";
+
+  public static final long DEFAULT_XLEARNING_UPLOAD_INCREMENTAL_IDLE_TIME = 60 * 1000;
+
+  public static final String XLEARNING_UPLOAD_INCREMENTAL_DONE_SUFFIX = "xlearning.upload.incremental.done.suffix";
+
+  public static final String XLEARNING_DOWNLOAD_CACHE_DIR = "xlearning.download.cache.dir";
+
+  public static final String XLEARNING_DOWNLOAD_CACHE_SIZE_LIMIT = "xlearning.download.cache.size.limit";
+
+  public static final int DEFAULT_XLEARNING_DOWNLOAD_CACHE_SIZE_LIMIT = 100 * 1024;
+
+  public static final String XLEARNING_DOWNLOAD_PROGRESSIVE = "xlearning.download.progressive";
+
+  public static final boolean DEFAULT_XLEARNING_DOWNLOAD_PROGRESSIVE = false;
+
   public static final String XLEARNING_CONTAINER_HEARTBEAT_INTERVAL = "xlearning.container.heartbeat.interval";
 
   public static final int DEFAULT_XLEARNING_CONTAINER_HEARTBEAT_INTERVAL = 10 * 1000;
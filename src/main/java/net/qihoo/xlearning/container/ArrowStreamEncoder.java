@@ -0,0 +1,459 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Encodes the records of the STREAM input into the Arrow IPC stream format: a schema message, the record
+ * batch messages of the columns parsed from the delimited text of the records, and the end of stream marker.
+ * The schema is declared as "name:type,name:type", the types being int, long, float, double and string.
+ * An empty or malformed value is null. The messages are encoded directly so that the feeder does not depend
+ * on the Arrow Java libraries.
+ */
+class ArrowStreamEncoder {
+
+  static final byte[] END_OF_STREAM = {-1, -1, -1, -1, 0, 0, 0, 0};
+
+  private static final short METADATA_V5 = 4;
+
+  private static final byte HEADER_SCHEMA = 1;
+
+  private static final byte HEADER_RECORD_BATCH = 3;
+
+  private static final byte TYPE_INT = 2;
+
+  private static final byte TYPE_FLOATING_POINT = 3;
+
+  private static final byte TYPE_UTF8 = 5;
+
+  private enum ColumnType {
+    INT(4), LONG(8), FLOAT(4), DOUBLE(8), STRING(0);
+
+    private final int width;
+
+    ColumnType(int width) {
+      this.width = width;
+    }
+  }
+
+  private final Column[] columns;
+
+  private final byte delimiter;
+
+  private int rows;
+
+  ArrowStreamEncoder(String schema, String delimiter) {
+    if (StringUtils.isBlank(schema)) {
+      throw new IllegalArgumentException("The Arrow record format needs the schema of the records");
+    }
+    String[] fields = StringUtils.split(schema, ",");
+    this.columns = new Column[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      String[] field = StringUtils.split(fields[i].trim(), ":");
+      if (field.length != 2) {
+        throw new IllegalArgumentException("Error schema field " + fields[i] + ", expected name:type");
+      }
+      columns[i] = new Column(field[0].trim(), ColumnType.valueOf(field[1].trim().toUpperCase()));
+    }
+    String unescaped = "\\t".equals(delimiter) ? "\t" : delimiter;
+    if (unescaped == null || unescaped.getBytes(StandardCharsets.UTF_8).length != 1) {
+      throw new IllegalArgumentException("The delimiter of the Arrow record format must be a single byte");
+    }
+    this.delimiter = unescaped.getBytes(StandardCharsets.UTF_8)[0];
+    this.rows = 0;
+  }
+
+  int getRows() {
+    return rows;
+  }
+
+  void add(byte[] record, int off, int len) {
+    int end = off + len;
+    int start = off;
+    for (Column column : columns) {
+      if (start > end) {
+        column.appendNull();
+        continue;
+      }
+      int stop = start;
+      while (stop < end && record[stop] != delimiter) {
+        stop++;
+      }
+      column.append(record, start, stop - start);
+      start = stop + 1;
+    }
+    rows++;
+  }
+
+  byte[] encodeSchema() {
+    List<FlatNode> fields = new ArrayList<>(columns.length);
+    for (Column column : columns) {
+      FlatTable type;
+      byte typeType;
+      switch (column.type) {
+        case INT:
+        case LONG:
+          typeType = TYPE_INT;
+          type = new FlatTable().scalar(0, 4, column.type.width * 8).scalar(1, 1, 1);
+          break;
+        case FLOAT:
+        case DOUBLE:
+          typeType = TYPE_FLOATING_POINT;
+          type = new FlatTable().scalar(0, 2, column.type == ColumnType.FLOAT ? 1 : 2);
+          break;
+        default:
+          typeType = TYPE_UTF8;
+          type = new FlatTable();
+      }
+      fields.add(new FlatTable()
+          .child(0, new FlatString(column.name))
+          .scalar(1, 1, 1)
+          .scalar(2, 1, typeType)
+          .child(3, type)
+          .child(5, new FlatTables(new ArrayList<FlatNode>())));
+    }
+    FlatTable schema = new FlatTable().scalar(0, 2, 0).child(1, new FlatTables(fields));
+    return frame(HEADER_SCHEMA, schema, new Bytes(0));
+  }
+
+  /**
+   * @return the record batch message of the records added since the last call
+   */
+  byte[] encodeBatch() {
+    Bytes body = new Bytes(64 * 1024);
+    Bytes nodes = new Bytes(16 * columns.length);
+    Bytes buffers = new Bytes(48 * columns.length);
+    for (Column column : columns) {
+      nodes.putLong(rows);
+      nodes.putLong(column.nullCount);
+      if (column.nullCount > 0) {
+        addBuffer(body, buffers, column.validity, (rows + 7) / 8);
+      } else {
+        addBuffer(body, buffers, column.validity, 0);
+      }
+      if (column.type == ColumnType.STRING) {
+        addBuffer(body, buffers, column.offsets.data, column.offsets.size);
+      }
+      addBuffer(body, buffers, column.values.data, column.values.size);
+      column.reset();
+    }
+    FlatTable batch = new FlatTable()
+        .scalar(0, 8, rows)
+        .child(1, new FlatStructs(nodes))
+        .child(2, new FlatStructs(buffers));
+    rows = 0;
+    return frame(HEADER_RECORD_BATCH, batch, body);
+  }
+
+  private static void addBuffer(Bytes body, Bytes buffers, byte[] data, int length) {
+    buffers.putLong(body.size);
+    buffers.putLong(length);
+    body.put(data, 0, length);
+    body.align(8);
+  }
+
+  private static byte[] frame(byte headerType, FlatTable header, Bytes body) {
+    FlatTable message = new FlatTable()
+        .scalar(0, 2, METADATA_V5)
+        .scalar(1, 1, headerType)
+        .child(2, header)
+        .scalar(3, 8, body.size);
+    Bytes metadata = new Bytes(1024);
+    metadata.putInt(0);
+    metadata.putInt(0, message.write(metadata));
+    metadata.align(8);
+    Bytes out = new Bytes(8 + metadata.size + body.size);
+    out.putInt(-1);
+    out.putInt(metadata.size);
+    out.put(metadata.data, 0, metadata.size);
+    out.put(body.data, 0, body.size);
+    return Arrays.copyOf(out.data, out.size);
+  }
+
+  private static class Column {
+    private final String name;
+    private final ColumnType type;
+    private final Bytes values;
+    private final Bytes offsets;
+    private byte[] validity;
+    private int length;
+    private int nullCount;
+
+    Column(String name, ColumnType type) {
+      this.name = name;
+      this.type = type;
+      this.values = new Bytes(64 * 1024);
+      this.offsets = new Bytes(type == ColumnType.STRING ? 16 * 1024 : 0);
+      this.validity = new byte[1024];
+      reset();
+    }
+
+    void reset() {
+      values.size = 0;
+      offsets.size = 0;
+      if (type == ColumnType.STRING) {
+        offsets.putInt(0);
+      }
+      Arrays.fill(validity, (byte) 0);
+      length = 0;
+      nullCount = 0;
+    }
+
+    void append(byte[] b, int off, int len) {
+      if (len == 0) {
+        appendNull();
+        return;
+      }
+      if (type == ColumnType.STRING) {
+        values.put(b, off, len);
+        offsets.putInt(values.size);
+        setValid();
+        return;
+      }
+      String text = new String(b, off, len, StandardCharsets.UTF_8).trim();
+      try {
+        switch (type) {
+          case INT:
+            values.putInt(Integer.parseInt(text));
+            break;
+          case LONG:
+            values.putLong(Long.parseLong(text));
+            break;
+          case FLOAT:
+            values.putInt(Float.floatToRawIntBits(Float.parseFloat(text)));
+            break;
+          default:
+            values.putLong(Double.doubleToRawLongBits(Double.parseDouble(text)));
+        }
+      } catch (NumberFormatException e) {
+        appendNull();
+        return;
+      }
+      setValid();
+    }
+
+    void appendNull() {
+      if (type == ColumnType.STRING) {
+        offsets.putInt(values.size);
+      } else {
+        values.skip(type.width);
+      }
+      if (length / 8 >= validity.length) {
+        validity = Arrays.copyOf(validity, validity.length * 2);
+      }
+      length++;
+      nullCount++;
+    }
+
+    private void setValid() {
+      if (length / 8 >= validity.length) {
+        validity = Arrays.copyOf(validity, validity.length * 2);
+      }
+      validity[length / 8] |= 1 << (length % 8);
+      length++;
+    }
+  }
+
+  /**
+   * Growable little-endian byte array.
+   */
+  private static class Bytes {
+    private byte[] data;
+    private int size;
+
+    Bytes(int capacity) {
+      this.data = new byte[Math.max(16, capacity)];
+      this.size = 0;
+    }
+
+    private void ensure(int more) {
+      if (size + more > data.length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, size + more));
+      }
+    }
+
+    void put(byte[] b, int off, int len) {
+      ensure(len);
+      System.arraycopy(b, off, data, size, len);
+      size += len;
+    }
+
+    void putLE(long value, int width) {
+      ensure(width);
+      for (int i = 0; i < width; i++) {
+        data[size++] = (byte) (value >>> (8 * i));
+      }
+    }
+
+    void putInt(int value) {
+      putLE(value, 4);
+    }
+
+    void putLong(long value) {
+      putLE(value, 8);
+    }
+
+    void putInt(int pos, int value) {
+      for (int i = 0; i < 4; i++) {
+        data[pos + i] = (byte) (value >>> (8 * i));
+      }
+    }
+
+    void putShort(int pos, int value) {
+      data[pos] = (byte) value;
+      data[pos + 1] = (byte) (value >>> 8);
+    }
+
+    void skip(int len) {
+      ensure(len);
+      Arrays.fill(data, size, size + len, (byte) 0);
+      size += len;
+    }
+
+    void align(int alignment) {
+      skip((alignment - size % alignment) % alignment);
+    }
+  }
+
+  /**
+   * Flatbuffers object laid out front to back, the referenced objects after the referencing ones.
+   */
+  private abstract static class FlatNode {
+    /**
+     * @return the position the offsets to this object point to
+     */
+    abstract int write(Bytes out);
+  }
+
+  private static class FlatTable extends FlatNode {
+    private final List<long[]> scalars = new ArrayList<>();
+    private final SortedMap<Integer, FlatNode> children = new TreeMap<>();
+
+    FlatTable scalar(int id, int size, long value) {
+      scalars.add(new long[]{id, size, value});
+      return this;
+    }
+
+    FlatTable child(int id, FlatNode node) {
+      children.put(id, node);
+      return this;
+    }
+
+    @Override
+    int write(Bytes out) {
+      List<long[]> fields = new ArrayList<>(scalars);
+      for (int id : children.keySet()) {
+        fields.add(new long[]{id, 4, 0});
+      }
+      // the widest fields first, so that no padding is needed between the fields
+      Collections.sort(fields, new Comparator<long[]>() {
+        @Override
+        public int compare(long[] a, long[] b) {
+          return Long.compare(b[1], a[1]);
+        }
+      });
+      int fieldNum = 0;
+      boolean hasLong = false;
+      for (long[] field : fields) {
+        fieldNum = Math.max(fieldNum, (int) field[0] + 1);
+        hasLong |= field[1] == 8;
+      }
+      out.align(2);
+      int vtablePos = out.size;
+      out.skip(4 + 2 * fieldNum);
+      out.align(4);
+      if (hasLong && (out.size + 4) % 8 != 0) {
+        out.skip(4);
+      }
+      int tablePos = out.size;
+      out.putInt(tablePos - vtablePos);
+      int[] fieldOffsets = new int[fieldNum];
+      Map<Integer, Integer> childPositions = new HashMap<>();
+      for (long[] field : fields) {
+        int id = (int) field[0];
+        int size = (int) field[1];
+        out.align(size);
+        fieldOffsets[id] = out.size - tablePos;
+        if (children.containsKey(id)) {
+          childPositions.put(id, out.size);
+        }
+        out.putLE(field[2], size);
+      }
+      out.putShort(vtablePos, 4 + 2 * fieldNum);
+      out.putShort(vtablePos + 2, out.size - tablePos);
+      for (int i = 0; i < fieldNum; i++) {
+        out.putShort(vtablePos + 4 + 2 * i, fieldOffsets[i]);
+      }
+      for (Map.Entry<Integer, FlatNode> child : children.entrySet()) {
+        int fieldPos = childPositions.get(child.getKey());
+        out.putInt(fieldPos, child.getValue().write(out) - fieldPos);
+      }
+      return tablePos;
+    }
+  }
+
+  private static class FlatTables extends FlatNode {
+    private final List<FlatNode> items;
+
+    FlatTables(List<FlatNode> items) {
+      this.items = items;
+    }
+
+    @Override
+    int write(Bytes out) {
+      out.align(4);
+      int pos = out.size;
+      out.putInt(items.size());
+      int first = out.size;
+      out.skip(4 * items.size());
+      for (int i = 0; i < items.size(); i++) {
+        int itemPos = first + 4 * i;
+        out.putInt(itemPos, items.get(i).write(out) - itemPos);
+      }
+      return pos;
+    }
+  }
+
+  /**
+   * Vector of structs made of longs, such as the FieldNode and the Buffer of the record batch.
+   */
+  private static class FlatStructs extends FlatNode {
+    private final Bytes raw;
+
+    FlatStructs(Bytes raw) {
+      this.raw = raw;
+    }
+
+    @Override
+    int write(Bytes out) {
+      out.align(4);
+      if ((out.size + 4) % 8 != 0) {
+        out.skip(4);
+      }
+      int pos = out.size;
+      out.putInt(raw.size / 16);
+      out.put(raw.data, 0, raw.size);
+      return pos;
+    }
+  }
+
+  private static class FlatString extends FlatNode {
+    private final byte[] value;
+
+    FlatString(String value) {
+      this.value = value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    int write(Bytes out) {
+      out.align(4);
+      int pos = out.size;
+      out.putInt(value.length);
+      out.put(value, 0, value.length);
+      out.skip(1);
+      return pos;
+    }
+  }
+}
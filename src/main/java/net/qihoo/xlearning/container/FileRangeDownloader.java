@@ -0,0 +1,293 @@
+package net.qihoo.xlearning.container;
+
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.MD5MD5CRC32FileChecksum;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.util.DataChecksum;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Downloads a file as byte ranges fetched concurrently with positional reads into a pre-allocated local file.
+ * A failed download is retried only for the ranges not completed yet, from where they stopped. When verified,
+ * the local file is checked against the block checksum of the source file, as HDFS computes it, or only for its
+ * local writes when the file system of the source has no such checksum.
+ */
+public class FileRangeDownloader {
+
+  private static final Log LOG = LogFactory.getLog(FileRangeDownloader.class);
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final Configuration conf;
+
+  private final ExecutorService rangePool;
+
+  private final int retry;
+
+  private final long rangeSize;
+
+  private final boolean verify;
+
+  public FileRangeDownloader(Configuration conf, ExecutorService rangePool) {
+    this.conf = conf;
+    this.rangePool = rangePool;
+    this.retry = conf.getInt(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_RETRY, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_RETRY);
+    this.rangeSize = Math.max(BUFFER_SIZE, conf.getLong(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_RANGE_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_RANGE_SIZE));
+    this.verify = conf.getBoolean(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_CHECKSUM, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_CHECKSUM);
+  }
+
+  public void download(Path src, String dst) throws IOException, InterruptedException {
+    File dstFile = new File(dst);
+    if (dstFile.exists()) {
+      dstFile.delete();
+    }
+    long startTime = System.currentTimeMillis();
+    FileSystem fs = null;
+    FileStatus status = null;
+    long length = 0L;
+    List<Range> ranges = null;
+    RandomAccessFile raf = null;
+    try {
+      int retried = 0;
+      while (true) {
+        IOException failure = null;
+        List<Range> pending = null;
+        try {
+          // the file status is fetched in the retry loop too, a NameNode hiccup only costs a retry
+          if (ranges == null) {
+            fs = src.getFileSystem(conf);
+            status = fs.getFileStatus(src);
+            length = status.getLen();
+            List<Range> planned = new ArrayList<>();
+            for (long offset = 0; offset < length; offset += rangeSize) {
+              planned.add(new Range(offset, Math.min(rangeSize, length - offset)));
+            }
+            raf = new RandomAccessFile(dstFile, "rw");
+            raf.setLength(length);
+            ranges = planned;
+          }
+          failure = fetch(fs, src, raf.getChannel(), pending(ranges));
+          pending = pending(ranges);
+        } catch (IOException e) {
+          failure = e;
+        }
+        if (pending != null && pending.isEmpty()) {
+          break;
+        }
+        if (retried >= retry) {
+          throw failure != null ? failure : new IOException("Download " + src + " incomplete");
+        }
+        retried++;
+        if (pending == null) {
+          LOG.warn("Download input file " + src + " failed, retry in " + retried, failure);
+        } else {
+          LOG.warn("Download input file " + src + " failed, resume " + pending.size() + " of " + ranges.size()
+              + " ranges, retry in " + retried, failure);
+        }
+      }
+      if (verify) {
+        verify(fs, status, raf.getChannel(), ranges);
+      }
+    } finally {
+      if (raf != null) {
+        raf.close();
+      }
+    }
+    LOG.info("Downloaded " + length + " bytes of " + src + " in " + ranges.size() + " ranges, cost "
+        + (System.currentTimeMillis() - startTime) + "ms");
+  }
+
+  private static List<Range> pending(List<Range> ranges) {
+    List<Range> pending = new ArrayList<>();
+    for (Range range : ranges) {
+      if (range.done < range.length) {
+        pending.add(range);
+      }
+    }
+    return pending;
+  }
+
+  private IOException fetch(final FileSystem fs, final Path src, final FileChannel channel, List<Range> pending)
+      throws InterruptedException {
+    if (pending.size() == 1) {
+      try {
+        pending.get(0).fetch(fs, src, channel);
+        return null;
+      } catch (IOException e) {
+        return e;
+      } catch (RuntimeException e) {
+        return new IOException(e);
+      }
+    }
+    List<Future<?>> futures = new ArrayList<>(pending.size());
+    for (final Range range : pending) {
+      futures.add(rangePool.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          range.fetch(fs, src, channel);
+          return null;
+        }
+      }));
+    }
+    IOException failure = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+      }
+    }
+    return failure;
+  }
+
+  private void verify(FileSystem fs, FileStatus status, FileChannel channel, List<Range> ranges) throws IOException {
+    Path src = status.getPath();
+    FileChecksum checksum = null;
+    try {
+      checksum = status.getLen() > 0 ? fs.getFileChecksum(src) : null;
+    } catch (IOException | UnsupportedOperationException e) {
+      LOG.debug("Get the checksum of " + src + " failed: " + e);
+    }
+    if (checksum instanceof MD5MD5CRC32FileChecksum) {
+      verifySource(fs, status, (MD5MD5CRC32FileChecksum) checksum, channel);
+      LOG.info("Verified " + src + " against the checksum of the source file");
+      return;
+    }
+    // without a checksum of the source, only the local writes of the bytes received are checked
+    LOG.info("No block checksum of " + src + " available, check the local writes only");
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    for (Range range : ranges) {
+      CRC32 crc = new CRC32();
+      long position = range.offset;
+      long end = range.offset + range.length;
+      while (position < end) {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+        int n = channel.read(buffer, position);
+        if (n < 0) {
+          throw new EOFException("Local file of " + src + " is shorter than expected");
+        }
+        crc.update(buffer.array(), 0, n);
+        position += n;
+      }
+      if (crc.getValue() != range.crc.getValue()) {
+        throw new IOException("Checksum mismatch of " + src + " in range " + range.offset + "+" + range.length);
+      }
+    }
+  }
+
+  /**
+   * Computes the HDFS file checksum of the local file, the MD5 of the MD5s of the chunk CRCs of each block, and
+   * compares it with the checksum of the source file.
+   */
+  private void verifySource(FileSystem fs, FileStatus status, MD5MD5CRC32FileChecksum checksum, FileChannel channel)
+      throws IOException {
+    DataInputBuffer serialized = new DataInputBuffer();
+    byte[] bytes = checksum.getBytes();
+    serialized.reset(bytes, bytes.length);
+    int bytesPerCrc = serialized.readInt();
+    serialized.readLong();
+    MD5Hash expected = new MD5Hash();
+    expected.readFields(serialized);
+    if (bytesPerCrc <= 0) {
+      throw new IOException("Invalid checksum " + checksum + " of " + status.getPath());
+    }
+    DataChecksum crc = DataChecksum.newDataChecksum(checksum.getCrcType(), bytesPerCrc);
+    MessageDigest fileDigest = MD5Hash.getDigester();
+    MessageDigest blockDigest;
+    try {
+      blockDigest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(Math.max(1, BUFFER_SIZE / bytesPerCrc) * bytesPerCrc);
+    byte[] crcBytes = new byte[4];
+    for (BlockLocation block : fs.getFileBlockLocations(status, 0, status.getLen())) {
+      blockDigest.reset();
+      long position = block.getOffset();
+      long end = block.getOffset() + block.getLength();
+      while (position < end) {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, position + buffer.position()) < 0) {
+            throw new EOFException("Local file of " + status.getPath() + " is shorter than expected");
+          }
+        }
+        for (int chunk = 0; chunk < buffer.limit(); chunk += bytesPerCrc) {
+          crc.reset();
+          crc.update(buffer.array(), chunk, Math.min(bytesPerCrc, buffer.limit() - chunk));
+          int value = (int) crc.getValue();
+          crcBytes[0] = (byte) (value >>> 24);
+          crcBytes[1] = (byte) (value >>> 16);
+          crcBytes[2] = (byte) (value >>> 8);
+          crcBytes[3] = (byte) value;
+          blockDigest.update(crcBytes);
+        }
+        position += buffer.limit();
+      }
+      fileDigest.update(blockDigest.digest());
+    }
+    if (!MessageDigest.isEqual(fileDigest.digest(), expected.getDigest())) {
+      throw new IOException("Checksum mismatch of " + status.getPath() + " with the source file");
+    }
+  }
+
+  private static class Range {
+    private final long offset;
+    private final long length;
+    private final CRC32 crc;
+    private long done;
+
+    Range(long offset, long length) {
+      this.offset = offset;
+      this.length = length;
+      this.crc = new CRC32();
+      this.done = 0L;
+    }
+
+    void fetch(FileSystem fs, Path src, FileChannel channel) throws IOException {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      FSDataInputStream in = fs.open(src);
+      try {
+        while (done < length) {
+          int n = in.read(offset + done, buffer, 0, (int) Math.min(buffer.length, length - done));
+          if (n < 0) {
+            throw new EOFException("Unexpected end of " + src + " at " + (offset + done));
+          }
+          ByteBuffer data = ByteBuffer.wrap(buffer, 0, n);
+          long position = offset + done;
+          while (data.hasRemaining()) {
+            position += channel.write(data, position);
+          }
+          crc.update(buffer, 0, n);
+          done += n;
+        }
+      } finally {
+        in.close();
+      }
+    }
+  }
+}
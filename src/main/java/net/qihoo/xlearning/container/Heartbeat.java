@@ -38,6 +38,8 @@ public class Heartbeat extends Thread {
 
   private Boolean IsXLearningTrainCompleted;
 
+  private final OutputUploader outputUploader;
+
   public Heartbeat(ApplicationContainerProtocol protocol, Configuration conf,
                    XLearningContainerId xlearningContainerId) {
     this.protocol = protocol;
@@ -47,6 +49,7 @@ public class Heartbeat extends Thread {
     this.heartbeatResponse = new HeartbeatResponse();
     this.lastInnerModelTimeStamp = Long.MIN_VALUE;
     this.IsXLearningTrainCompleted = false;
+    this.outputUploader = new OutputUploader(conf);
     this.heartbeatInterval = this.conf.getInt(XLearningConfiguration.XLEARNING_CONTAINER_HEARTBEAT_INTERVAL, XLearningConfiguration.DEFAULT_XLEARNING_CONTAINER_HEARTBEAT_INTERVAL);
     this.heartbeatRetryMax = this.conf.getInt(XLearningConfiguration.XLEARNING_CONTAINER_HEARTBEAT_RETRY, XLearningConfiguration.DEFAULT_XLEARNING_CONTAINER_HEARTBEAT_RETRY);
   }
@@ -68,18 +71,22 @@ public class Heartbeat extends Thread {
     this.heartbeatRequest.setInnerModelSavedStatus(flag);
   }
 
-  public void setProgressLog(String xlearningProgressLog) {
-    this.heartbeatRequest.setProgressLog(xlearningProgressLog);
+  public void setProgress(float progress) {
+    this.heartbeatRequest.setProgress(progress);
   }
 
-  public void setContainersStartTime(String startTime) {
+  public void setContainersStartTime(long startTime) {
     this.heartbeatRequest.setContainersStartTime(startTime);
   }
 
-  public void setContainersFinishTime(String finishTime) {
+  public void setContainersFinishTime(long finishTime) {
     this.heartbeatRequest.setContainersFinishTime(finishTime);
   }
 
+  public OutputUploader getOutputUploader() {
+    return this.outputUploader;
+  }
+
   public Boolean isXLearningTrainCompleted() {
     return this.IsXLearningTrainCompleted;
   }
@@ -88,7 +95,15 @@ public class Heartbeat extends Thread {
     int retry = 0;
     while (true) {
       try {
-        heartbeatResponse = protocol.heartbeat(containerId, heartbeatRequest);
+        heartbeatRequest.setOutputUploadedBytes(outputUploader.getUploadedBytes());
+        heartbeatRequest.setOutputUploadMillis(outputUploader.getUploadMillis());
+        HeartbeatRequest delta = heartbeatRequest.takeDelta();
+        try {
+          heartbeatResponse = protocol.heartbeat(containerId, delta);
+        } catch (Exception e) {
+          heartbeatRequest.restoreDelta(delta);
+          throw e;
+        }
         LOG.debug("Send HeartBeat to ApplicationMaster");
         return heartbeatResponse;
       } catch (Exception e) {
@@ -111,6 +126,7 @@ public class Heartbeat extends Thread {
     if (!heartbeatResponse.getIsXLearningTrainCompleted()) {
       if (!heartbeatResponse.getInnerModelTimeStamp().equals(lastInnerModelTimeStamp)) {
         lastInnerModelTimeStamp = heartbeatResponse.getInnerModelTimeStamp();
+        setInnerModelSavedStatus(false);
         Thread interResultSavedThread = new Thread(new Runnable() {
           @Override
           public void run() {
@@ -131,10 +147,9 @@ public class Heartbeat extends Thread {
                 }
                 if (localFs.exists(localPath)) {
                   LOG.info("Start upload output " + localPath + " to remote path " + remotePath);
-                  dfs.copyFromLocalFile(false, false, localPath, remotePath);
+                  outputUploader.upload(localPath, remotePath);
                   LOG.info("Upload output " + localPath + " to remote path " + remotePath + " finished.");
                 }
-                localFs.close();
               }
               LOG.info("container " + containerId + " currentStatus:" + heartbeatRequest.getXLearningContainerStatus() + " , savedModel completed");
             } catch (Exception e) {
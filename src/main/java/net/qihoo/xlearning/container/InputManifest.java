@@ -0,0 +1,53 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Append-only index of the input files already downloaded, one local path per line, for the process
+ * started before the downloads finish. A marker file named after the manifest with the ".done" suffix
+ * is created once all the files are listed.
+ */
+public class InputManifest {
+
+  private static final Log LOG = LogFactory.getLog(InputManifest.class);
+
+  public static final String DONE_SUFFIX = ".done";
+
+  private final File manifest;
+
+  private final OutputStream out;
+
+  private int fileNum;
+
+  public InputManifest(String path) throws IOException {
+    this.manifest = new File(path);
+    new File(path + DONE_SUFFIX).delete();
+    this.out = new FileOutputStream(manifest, false);
+    this.fileNum = 0;
+  }
+
+  public String getPath() {
+    return manifest.getAbsolutePath();
+  }
+
+  public synchronized void append(String file) throws IOException {
+    out.write((file + "\n").getBytes(StandardCharsets.UTF_8));
+    out.flush();
+    fileNum++;
+  }
+
+  public synchronized void finish() throws IOException {
+    out.close();
+    if (!new File(manifest.getPath() + DONE_SUFFIX).createNewFile()) {
+      LOG.warn("Input manifest completion marker already exists");
+    }
+    LOG.info("Input manifest " + manifest + " completed with " + fileNum + " files");
+  }
+}
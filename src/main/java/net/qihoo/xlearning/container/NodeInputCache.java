@@ -0,0 +1,221 @@
+package net.qihoo.xlearning.container;
+
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Node level cache of the downloaded input files, shared by the containers of all the jobs of a user on the host.
+ * Each user caches in a subdirectory of the configured directory, readable by the user only, so that the entries
+ * of other users can neither be read nor planted. The entries are named by the digest of the path, modification
+ * time and length of the source file. A hit of the expected length is hard linked into the container working
+ * directory; a miss is downloaded into a temporary file of the cache directory and renamed into place. The least
+ * recently used entries are evicted beyond the size limit. The changes of the cache directory are guarded by a
+ * lock file. The cache never fails a download: when it cannot be used, the file is downloaded directly.
+ */
+public class NodeInputCache {
+
+  private static final Log LOG = LogFactory.getLog(NodeInputCache.class);
+
+  private static final String LOCK_FILE = ".lock";
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static final ReentrantLock LOCAL_LOCK = new ReentrantLock();
+
+  private final Configuration conf;
+
+  private final File cacheDir;
+
+  private final long sizeLimit;
+
+  private final FileRangeDownloader downloader;
+
+  public NodeInputCache(Configuration conf, FileRangeDownloader downloader) throws IOException {
+    this.conf = conf;
+    String user = System.getProperty("user.name");
+    this.cacheDir = new File(conf.get(XLearningConfiguration.XLEARNING_DOWNLOAD_CACHE_DIR), user);
+    this.sizeLimit = conf.getLong(XLearningConfiguration.XLEARNING_DOWNLOAD_CACHE_SIZE_LIMIT, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_CACHE_SIZE_LIMIT) * 1024 * 1024;
+    this.downloader = downloader;
+    java.nio.file.Path dir = cacheDir.toPath();
+    Files.createDirectories(dir);
+    // a directory or link planted by another user under the user name is never trusted
+    if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)
+        || !user.equals(Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS).getName())) {
+      throw new IOException("Input cache directory " + cacheDir + " is not a directory owned by " + user);
+    }
+    try {
+      Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+    } catch (UnsupportedOperationException e) {
+      throw new IOException("Restrict the input cache directory " + cacheDir + " to its owner failed", e);
+    }
+    File lockFile = new File(cacheDir, LOCK_FILE);
+    lockFile.createNewFile();
+    if (!lockFile.canWrite()) {
+      throw new IOException("Lock file of the input cache directory " + cacheDir + " is not writable");
+    }
+  }
+
+  public void download(Path src, String dst) throws IOException, InterruptedException {
+    FileStatus status = src.getFileSystem(conf).getFileStatus(src);
+    String key = DigestUtils.md5Hex(status.getPath().toString() + "\n" + status.getModificationTime() + "\n" + status.getLen());
+    File entry = new File(cacheDir, key);
+    File dstFile = new File(dst);
+    if (dstFile.exists()) {
+      dstFile.delete();
+    }
+    try {
+      if (link(entry, status.getLen(), dstFile)) {
+        LOG.info("Input file " + src + " hit the node cache " + entry);
+        return;
+      }
+    } catch (IOException e) {
+      LOG.warn("Read the node input cache failed, download " + src + " directly. " + e);
+      downloader.download(src, dst);
+      return;
+    }
+    File temp = new File(cacheDir, key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+    try {
+      downloader.download(src, temp.getPath());
+      try {
+        FileLock lock = lock();
+        try {
+          if (!entry.exists()) {
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            // the links share the entry, keep it from being modified in place
+            entry.setWritable(false, false);
+          }
+          evict(entry);
+        } finally {
+          unlock(lock);
+        }
+      } catch (IOException e) {
+        LOG.warn("Add " + src + " to the node input cache failed, use the downloaded file. " + e);
+        Files.move(temp.toPath(), dstFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return;
+      }
+    } finally {
+      temp.delete();
+    }
+    boolean linked;
+    try {
+      linked = link(entry, status.getLen(), dstFile);
+    } catch (IOException e) {
+      LOG.warn("Read the node input cache failed. " + e);
+      linked = false;
+    }
+    if (!linked) {
+      // evicted by another container in the meantime
+      LOG.warn("Input cache entry " + entry + " of " + src + " is not available, download it directly");
+      downloader.download(src, dst);
+      return;
+    }
+    LOG.info("Input file " + src + " added to the node cache " + entry);
+  }
+
+  private boolean link(File entry, long length, File dstFile) throws IOException {
+    FileLock lock = lock();
+    try {
+      if (!entry.exists()) {
+        return false;
+      }
+      if (entry.length() != length) {
+        LOG.warn("Input cache entry " + entry + " has " + entry.length() + " bytes instead of " + length + ", drop it");
+        entry.delete();
+        return false;
+      }
+      // refresh the entry for the LRU eviction
+      entry.setLastModified(System.currentTimeMillis());
+      try {
+        Files.createLink(dstFile.toPath(), entry.toPath());
+      } catch (IOException | UnsupportedOperationException e) {
+        LOG.debug("Hard link " + entry + " failed, copy it instead. " + e);
+        Files.copy(entry.toPath(), dstFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      return true;
+    } finally {
+      unlock(lock);
+    }
+  }
+
+  private void evict(File keep) {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    List<File> entries = new ArrayList<>();
+    long total = 0L;
+    for (File file : files) {
+      if (file.isFile() && !file.getName().equals(LOCK_FILE) && !file.getName().endsWith(TEMP_SUFFIX)) {
+        entries.add(file);
+        total += file.length();
+      }
+    }
+    if (total <= sizeLimit) {
+      return;
+    }
+    File[] sorted = entries.toArray(new File[entries.size()]);
+    Arrays.sort(sorted, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        return Long.compare(a.lastModified(), b.lastModified());
+      }
+    });
+    for (File file : sorted) {
+      if (total <= sizeLimit) {
+        break;
+      }
+      if (file.equals(keep)) {
+        continue;
+      }
+      long length = file.length();
+      if (file.delete()) {
+        total -= length;
+        LOG.info("Evicted " + file + " of " + length + " bytes from the node input cache");
+      }
+    }
+  }
+
+  private FileLock lock() throws IOException {
+    LOCAL_LOCK.lock();
+    try {
+      RandomAccessFile raf = new RandomAccessFile(new File(cacheDir, LOCK_FILE), "rw");
+      FileChannel channel = raf.getChannel();
+      return channel.lock();
+    } catch (IOException e) {
+      LOCAL_LOCK.unlock();
+      throw e;
+    }
+  }
+
+  private void unlock(FileLock lock) {
+    try {
+      lock.release();
+      lock.channel().close();
+    } catch (IOException e) {
+      LOG.debug("Release the input cache lock failed: " + e);
+    } finally {
+      LOCAL_LOCK.unlock();
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package net.qihoo.xlearning.container;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import net.qihoo.xlearning.util.Utilities;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads a local output file or directory tree to the remote file system, copying the files concurrently.
+ * A failed file is uploaded again from the start, up to the configured retries.
+ */
+public class OutputUploader {
+
+  private static final Log LOG = LogFactory.getLog(OutputUploader.class);
+
+  private final Configuration conf;
+
+  private final ExecutorService uploadPool;
+
+  private final int retry;
+
+  private final AtomicLong uploadedBytes;
+
+  private final AtomicLong uploadMillis;
+
+  public OutputUploader(Configuration conf) {
+    this.conf = conf;
+    this.uploadPool = Executors.newFixedThreadPool(
+        Math.max(1, conf.getInt(XLearningConfiguration.XLEARNING_UPLOAD_FILE_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_UPLOAD_FILE_THREAD_NUMS)),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("Upload-File-Thread #%d")
+            .build()
+    );
+    this.retry = conf.getInt(XLearningConfiguration.XLEARNING_UPLOAD_FILE_RETRY, XLearningConfiguration.DEFAULT_XLEARNING_UPLOAD_FILE_RETRY);
+    this.uploadedBytes = new AtomicLong(0L);
+    this.uploadMillis = new AtomicLong(0L);
+  }
+
+  /**
+   * Total bytes uploaded by this uploader so far.
+   */
+  public long getUploadedBytes() {
+    return uploadedBytes.get();
+  }
+
+  /**
+   * Total time spent in the uploads so far, in milliseconds.
+   */
+  public long getUploadMillis() {
+    return uploadMillis.get();
+  }
+
+  /**
+   * Uploads localPath to remotePath, which must not exist, with the same layout as copyFromLocalFile.
+   * Returns the number of bytes uploaded.
+   */
+  public long upload(Path localPath, Path remotePath) throws IOException {
+    FileSystem localFs = FileSystem.getLocal(conf);
+    FileSystem dfs = remotePath.getFileSystem(conf);
+    long startTime = System.currentTimeMillis();
+    List<FileStatus> files = new ArrayList<>();
+    List<Path> targets = new ArrayList<>();
+    collect(localFs, dfs, localFs.getFileStatus(localPath), remotePath, files, targets);
+    long bytes = uploadFiles(dfs, files, targets);
+    long cost = Math.max(1L, System.currentTimeMillis() - startTime);
+    LOG.info("Uploaded " + files.size() + " files, " + bytes + " bytes of " + localPath + " to " + remotePath
+        + ", cost " + cost + "ms, " + (bytes * 1000L / cost) + " bytes/s");
+    return bytes;
+  }
+
+  /**
+   * Uploads each local file to the remote path at the same index, overwriting existing remote files.
+   * Returns the number of bytes uploaded.
+   */
+  public long uploadFiles(FileSystem dfs, List<FileStatus> files, List<Path> targets) throws IOException {
+    long startTime = System.currentTimeMillis();
+    List<Future<Long>> futures = new ArrayList<>(files.size());
+    for (int i = 0; i < files.size(); i++) {
+      futures.add(uploadPool.submit(new UploadTask(dfs, files.get(i), targets.get(i))));
+    }
+    long bytes = 0L;
+    IOException failure = null;
+    for (Future<Long> future : futures) {
+      try {
+        bytes += future.get();
+      } catch (ExecutionException e) {
+        failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+      } catch (InterruptedException e) {
+        for (Future<Long> f : futures) {
+          f.cancel(true);
+        }
+        throw new InterruptedIOException("Interrupted while uploading the output files");
+      }
+    }
+    uploadedBytes.addAndGet(bytes);
+    uploadMillis.addAndGet(System.currentTimeMillis() - startTime);
+    if (failure != null) {
+      throw failure;
+    }
+    return bytes;
+  }
+
+  private void collect(FileSystem localFs, FileSystem dfs, FileStatus local, Path remote,
+                       List<FileStatus> files, List<Path> targets) throws IOException {
+    if (local.isDirectory()) {
+      if (!dfs.mkdirs(remote)) {
+        throw new IOException("Create remote output directory " + remote + " failed");
+      }
+      for (FileStatus child : localFs.listStatus(local.getPath())) {
+        collect(localFs, dfs, child, new Path(remote, child.getPath().getName()), files, targets);
+      }
+    } else {
+      files.add(local);
+      targets.add(remote);
+    }
+  }
+
+  private class UploadTask implements Callable<Long> {
+
+    private final FileSystem dfs;
+
+    private final FileStatus local;
+
+    private final Path remote;
+
+    UploadTask(FileSystem dfs, FileStatus local, Path remote) {
+      this.dfs = dfs;
+      this.local = local;
+      this.remote = remote;
+    }
+
+    @Override
+    public Long call() throws IOException {
+      int retried = 0;
+      while (true) {
+        try {
+          dfs.copyFromLocalFile(false, true, local.getPath(), remote);
+          return local.getLen();
+        } catch (IOException e) {
+          if (retried >= retry || Thread.currentThread().isInterrupted()) {
+            throw e;
+          }
+          retried++;
+          LOG.warn("Upload output file " + local.getPath() + " failed, retry in " + retried, e);
+          Utilities.sleep(1000L * retried);
+        }
+      }
+    }
+  }
+}
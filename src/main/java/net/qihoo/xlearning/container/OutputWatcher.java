@@ -0,0 +1,190 @@
+package net.qihoo.xlearning.container;
+
+import net.qihoo.xlearning.common.OutputInfo;
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import net.qihoo.xlearning.util.Utilities;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Uploads the completed files of the local output directories in the background while the xlearning process
+ * is running. A file is completed when it is unmodified for the configured idle time, or, if a done suffix is
+ * configured, when the marker file with that suffix exists next to it; the marker files themselves are never
+ * uploaded. The final pass uploads the remaining and the changed files, and removes the remote files whose local
+ * file is gone, so that the remote output is the same as a single upload after the process exits.
+ */
+public class OutputWatcher extends Thread {
+
+  private static final Log LOG = LogFactory.getLog(OutputWatcher.class);
+
+  private final Configuration conf;
+
+  private final OutputUploader uploader;
+
+  private final List<OutputInfo> outputs;
+
+  private final XLearningContainerId containerId;
+
+  private final long interval;
+
+  private final long idleTime;
+
+  private final String doneSuffix;
+
+  private final Map<Path, UploadedFile> uploaded;
+
+  private volatile boolean finished;
+
+  public OutputWatcher(Configuration conf, OutputUploader uploader, List<OutputInfo> outputs, XLearningContainerId containerId) {
+    super("Output-Watcher-Thread");
+    this.conf = conf;
+    this.uploader = uploader;
+    this.outputs = outputs;
+    this.containerId = containerId;
+    this.interval = Math.max(1000L, conf.getLong(XLearningConfiguration.XLEARNING_UPLOAD_INCREMENTAL_INTERVAL, XLearningConfiguration.DEFAULT_XLEARNING_UPLOAD_INCREMENTAL_INTERVAL));
+    this.idleTime = conf.getLong(XLearningConfiguration.XLEARNING_UPLOAD_INCREMENTAL_IDLE_TIME, XLearningConfiguration.DEFAULT_XLEARNING_UPLOAD_INCREMENTAL_IDLE_TIME);
+    String suffix = conf.get(XLearningConfiguration.XLEARNING_UPLOAD_INCREMENTAL_DONE_SUFFIX, "");
+    this.doneSuffix = suffix.trim().isEmpty() ? null : suffix.trim();
+    this.uploaded = new HashMap<>();
+    this.finished = false;
+    setDaemon(true);
+  }
+
+  /**
+   * Clears the remote output paths left by a previous attempt of the container.
+   */
+  public void prepare() throws IOException {
+    for (OutputInfo outputInfo : outputs) {
+      Path remotePath = getRemotePath(outputInfo);
+      FileSystem dfs = remotePath.getFileSystem(conf);
+      if (dfs.exists(remotePath)) {
+        LOG.info("Container remote output path " + remotePath + " exists, so we has to delete it first.");
+        dfs.delete(remotePath, true);
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    while (!finished) {
+      Utilities.sleep(interval);
+      synchronized (this) {
+        if (finished) {
+          break;
+        }
+        try {
+          scan(false);
+        } catch (IOException e) {
+          LOG.warn("Upload the completed output files failed, try again in the next round", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops the background uploads and uploads all the files not uploaded yet or changed since.
+   */
+  public void finish() throws IOException {
+    finished = true;
+    synchronized (this) {
+      scan(true);
+    }
+  }
+
+  private Path getRemotePath(OutputInfo outputInfo) {
+    return new Path(outputInfo.getDfsLocation() + "/_temporary/" + containerId.toString());
+  }
+
+  private void scan(boolean last) throws IOException {
+    FileSystem localFs = FileSystem.getLocal(conf);
+    long now = System.currentTimeMillis();
+    for (OutputInfo outputInfo : outputs) {
+      Path localPath = new Path(outputInfo.getLocalLocation());
+      Path remotePath = getRemotePath(outputInfo);
+      FileSystem dfs = remotePath.getFileSystem(conf);
+      Set<Path> existing = new HashSet<>();
+      List<FileStatus> files = new ArrayList<>();
+      List<Path> targets = new ArrayList<>();
+      if (localFs.exists(localPath)) {
+        collect(localFs, dfs, localFs.getFileStatus(localPath), remotePath, last, now, existing, files, targets);
+      }
+      if (!files.isEmpty()) {
+        long bytes = uploader.uploadFiles(dfs, files, targets);
+        for (int i = 0; i < files.size(); i++) {
+          FileStatus file = files.get(i);
+          uploaded.put(file.getPath(), new UploadedFile(targets.get(i), file.getLen(), file.getModificationTime()));
+        }
+        LOG.info((last ? "Uploaded the remaining " : "Uploaded the completed ") + files.size() + " files, "
+            + bytes + " bytes of " + localPath + " to " + remotePath);
+      }
+      if (last) {
+        Iterator<Map.Entry<Path, UploadedFile>> it = uploaded.entrySet().iterator();
+        while (it.hasNext()) {
+          Map.Entry<Path, UploadedFile> entry = it.next();
+          Path target = entry.getValue().target;
+          boolean underOutput = target.equals(remotePath) || target.toString().startsWith(remotePath.toString() + "/");
+          if (underOutput && !existing.contains(entry.getKey())) {
+            LOG.info("Local output file " + entry.getKey() + " was removed, delete " + target);
+            dfs.delete(target, false);
+            it.remove();
+          }
+        }
+      }
+    }
+  }
+
+  private void collect(FileSystem localFs, FileSystem dfs, FileStatus local, Path remote, boolean last, long now,
+                       Set<Path> existing, List<FileStatus> files, List<Path> targets) throws IOException {
+    if (local.isDirectory()) {
+      if (last && !dfs.mkdirs(remote)) {
+        throw new IOException("Create remote output directory " + remote + " failed");
+      }
+      for (FileStatus child : localFs.listStatus(local.getPath())) {
+        collect(localFs, dfs, child, new Path(remote, child.getPath().getName()), last, now, existing, files, targets);
+      }
+      return;
+    }
+    // the done markers are not part of the output, in the final pass neither
+    if (doneSuffix != null && local.getPath().getName().endsWith(doneSuffix)) {
+      return;
+    }
+    existing.add(local.getPath());
+    UploadedFile done = uploaded.get(local.getPath());
+    if (done != null && done.length == local.getLen() && done.modificationTime == local.getModificationTime()) {
+      return;
+    }
+    if (last || isCompleted(localFs, local, now)) {
+      files.add(local);
+      targets.add(remote);
+    }
+  }
+
+  private boolean isCompleted(FileSystem localFs, FileStatus local, long now) throws IOException {
+    if (doneSuffix == null) {
+      return now - local.getModificationTime() >= idleTime;
+    }
+    return localFs.exists(local.getPath().suffix(doneSuffix));
+  }
+
+  private static class UploadedFile {
+
+    private final Path target;
+
+    private final long length;
+
+    private final long modificationTime;
+
+    UploadedFile(Path target, long length, long modificationTime) {
+      this.target = target;
+      this.length = length;
+      this.modificationTime = modificationTime;
+    }
+  }
+}
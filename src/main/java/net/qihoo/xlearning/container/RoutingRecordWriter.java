@@ -0,0 +1,125 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes the lines of the text stream output by their first field, which is removed from the written line.
+ * The field is the local name of one of the outputs, optionally followed by "/partition" for a partition
+ * subdirectory under it; any other field is taken as a partition of the first output. A line without the
+ * delimiter goes to the first output as it is. Each route gets its own record writer, opened on its first line.
+ */
+public class RoutingRecordWriter implements RecordWriter<Object, Text> {
+
+  private static final Log LOG = LogFactory.getLog(RoutingRecordWriter.class);
+
+  /**
+   * Opens the record writer of a route.
+   */
+  public interface WriterFactory {
+    RecordWriter<Object, Text> create(int output, String partition) throws IOException;
+  }
+
+  private final List<String> outputNames;
+
+  private final WriterFactory factory;
+
+  private final byte delimiter;
+
+  private final int maxRoutes;
+
+  private final Map<Text, RecordWriter<Object, Text>> routes;
+
+  private final Text probe;
+
+  private final Text record;
+
+  private RecordWriter<Object, Text> defaultWriter;
+
+  public RoutingRecordWriter(List<String> outputNames, WriterFactory factory, byte delimiter, int maxRoutes) {
+    this.outputNames = outputNames;
+    this.factory = factory;
+    this.delimiter = delimiter;
+    this.maxRoutes = maxRoutes;
+    this.routes = new HashMap<>();
+    this.probe = new Text();
+    this.record = new Text();
+  }
+
+  public void write(Object key, Text line) throws IOException {
+    byte[] bytes = line.getBytes();
+    int length = line.getLength();
+    int field = -1;
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] == delimiter) {
+        field = i;
+        break;
+      }
+    }
+    if (field < 0) {
+      if (defaultWriter == null) {
+        defaultWriter = getWriter(new Text(outputNames.get(0)));
+      }
+      defaultWriter.write(null, line);
+      return;
+    }
+    // the probe avoids decoding the field of every line
+    probe.set(bytes, 0, field);
+    RecordWriter<Object, Text> writer = routes.get(probe);
+    if (writer == null) {
+      writer = getWriter(new Text(probe));
+    }
+    record.set(bytes, field + 1, length - field - 1);
+    writer.write(null, record);
+  }
+
+  private RecordWriter<Object, Text> getWriter(Text route) throws IOException {
+    RecordWriter<Object, Text> writer = routes.get(route);
+    if (writer != null) {
+      return writer;
+    }
+    if (routes.size() >= maxRoutes) {
+      throw new IOException("Stream output has more than " + maxRoutes + " routes, failed to route " + route);
+    }
+    String name = route.toString();
+    int output = 0;
+    String partition = name;
+    int slash = name.indexOf('/');
+    String outputName = slash < 0 ? name : name.substring(0, slash);
+    if (outputNames.contains(outputName)) {
+      output = outputNames.indexOf(outputName);
+      partition = slash < 0 ? null : name.substring(slash + 1);
+    }
+    if (partition != null && (partition.isEmpty() || partition.startsWith("/") || partition.contains(".."))) {
+      throw new IOException("Invalid partition " + partition + " of the stream output route " + name);
+    }
+    LOG.info("Open the stream output route " + name + " to output " + outputNames.get(output)
+        + (partition == null ? "" : ", partition " + partition));
+    writer = factory.create(output, partition);
+    routes.put(route, writer);
+    return writer;
+  }
+
+  public void close(Reporter reporter) throws IOException {
+    IOException failure = null;
+    for (RecordWriter<Object, Text> writer : routes.values()) {
+      try {
+        writer.close(reporter);
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    LOG.info("Closed " + routes.size() + " stream output routes");
+  }
+}
@@ -0,0 +1,154 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single producer, single consumer byte ring buffer in a memory mapped file, read by the xlearning process
+ * instead of its stdin. The file starts with a 64 bytes little-endian header:
+ * <pre>
+ *   0  int   magic "XLRB"
+ *   4  int   version, 1
+ *   8  long  capacity of the data region
+ *   16 long  write sequence, the total bytes written, updated by the feeder
+ *   24 long  read sequence, the total bytes consumed, updated by the reader
+ *   32 int   closed, set to 1 by the feeder after the last write
+ * </pre>
+ * The byte of sequence s is stored at 64 + s % capacity. The feeder publishes the write sequence after
+ * the data and waits while the ring is full; the reader consumes the bytes up to the write sequence, then
+ * publishes its read sequence. The input ends when closed is set and both sequences are equal.
+ * <p>
+ * The sequences are plain stores and loads of the mapped memory, with no fence the reader process can see:
+ * Java 7 has none for a mapped buffer, and the reader is not a Java thread. The data bytes are visible to the
+ * reader before the write sequence only thanks to the store ordering of x86, so the ring buffer is supported
+ * on x86-64 hosts only; on the other architectures the feeder warns and the plain stdin should be used.
+ */
+public class ShmRingBuffer extends OutputStream {
+
+  private static final Log LOG = LogFactory.getLog(ShmRingBuffer.class);
+
+  public static final int MAGIC = 0x42524c58;
+
+  public static final int VERSION = 1;
+
+  public static final int HEADER_SIZE = 64;
+
+  private static final int WRITE_SEQ_OFFSET = 16;
+
+  private static final int READ_SEQ_OFFSET = 24;
+
+  private static final int CLOSED_OFFSET = 32;
+
+  private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final File file;
+
+  private final RandomAccessFile raf;
+
+  private final MappedByteBuffer buffer;
+
+  private final ByteBuffer data;
+
+  private final int capacity;
+
+  private final byte[] single;
+
+  private long writeSeq;
+
+  private long fullWaitNanos;
+
+  private boolean closed;
+
+  public ShmRingBuffer(File file, int capacity) throws IOException {
+    String arch = System.getProperty("os.arch");
+    if (!"amd64".equals(arch) && !"x86_64".equals(arch)) {
+      LOG.warn("Ring buffer relies on the x86 store ordering, the reader may see stale bytes on " + arch);
+    }
+    this.file = file;
+    this.capacity = capacity;
+    this.raf = new RandomAccessFile(file, "rw");
+    raf.setLength(0);
+    raf.setLength(HEADER_SIZE + (long) capacity);
+    this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(4, VERSION);
+    buffer.putLong(8, capacity);
+    buffer.putLong(WRITE_SEQ_OFFSET, 0L);
+    buffer.putLong(READ_SEQ_OFFSET, 0L);
+    buffer.putInt(CLOSED_OFFSET, 0);
+    // the magic goes last so that a reader never sees a half initialized header
+    buffer.putInt(0, MAGIC);
+    buffer.position(HEADER_SIZE);
+    this.data = buffer.slice();
+    this.single = new byte[1];
+    this.writeSeq = 0L;
+    this.closed = false;
+  }
+
+  public String getPath() {
+    return file.getAbsolutePath();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    single[0] = (byte) b;
+    write(single, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Ring buffer " + file + " is closed");
+    }
+    while (len > 0) {
+      long free = capacity - (writeSeq - buffer.getLong(READ_SEQ_OFFSET));
+      if (free <= 0) {
+        waitForReader();
+        continue;
+      }
+      int index = (int) (writeSeq % capacity);
+      int n = (int) Math.min(Math.min(len, free), capacity - index);
+      ByteBuffer target = data.duplicate();
+      target.position(index);
+      target.put(b, off, n);
+      writeSeq += n;
+      off += n;
+      len -= n;
+      // the data stores are ahead of this store for the reader on x86 only, see the class comment
+      buffer.putLong(WRITE_SEQ_OFFSET, writeSeq);
+    }
+  }
+
+  private void waitForReader() throws IOException {
+    long start = System.nanoTime();
+    LockSupport.parkNanos(WAIT_NANOS);
+    fullWaitNanos += System.nanoTime() - start;
+    if (Thread.interrupted()) {
+      throw new InterruptedIOException("Interrupted while waiting for the reader of " + file);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    buffer.putInt(CLOSED_OFFSET, 1);
+    raf.close();
+    LOG.info("Ring buffer " + file + " closed after " + writeSeq + " bytes, waited for the reader "
+        + TimeUnit.NANOSECONDS.toMillis(fullWaitNanos) + "ms");
+  }
+}
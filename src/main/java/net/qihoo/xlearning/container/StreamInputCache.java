@@ -0,0 +1,250 @@
+package net.qihoo.xlearning.container;
+
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Local cache of the STREAM input bytes written during the first epoch, replayed for the later epochs.
+ * The file is a sequence of frames (raw length, stored length, stored bytes), optionally compressed
+ * frame by frame with the configured codec. The frames go through the codec streams, which split them into
+ * the blocks the block codecs like lz4 and snappy expect. The offset and length of each split are kept in memory.
+ */
+public class StreamInputCache {
+
+  private static final Log LOG = LogFactory.getLog(StreamInputCache.class);
+
+  private final File file;
+
+  private final long sizeLimit;
+
+  private final long[] splitOffsets;
+
+  private final long[] splitLengths;
+
+  private CompressionCodec codec;
+
+  private Compressor compressor;
+
+  private Decompressor decompressor;
+
+  private DataOutputStream out;
+
+  private MappedByteBuffer mapped;
+
+  private byte[] rawBuffer;
+
+  private byte[] storedBuffer;
+
+  private final DataOutputBuffer storedOut;
+
+  private long size;
+
+  private boolean valid;
+
+  public StreamInputCache(Configuration conf, int splitNum) throws IOException {
+    this.file = new File(conf.get(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHEFILE_NAME, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHEFILE_NAME));
+    this.sizeLimit = conf.getLong(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT) * 1024 * 1024;
+    this.splitOffsets = new long[splitNum];
+    this.splitLengths = new long[splitNum];
+    String codecClass = conf.get(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHE_CODEC, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHE_CODEC);
+    if (codecClass != null && !codecClass.trim().equals("")) {
+      try {
+        this.codec = (CompressionCodec) ReflectionUtils.newInstance(conf.getClassByName(codecClass.trim()), conf);
+        this.compressor = codec.createCompressor();
+        this.decompressor = codec.createDecompressor();
+      } catch (Exception e) {
+        LOG.warn("Codec " + codecClass + " is not available for the input cache, cache without compression. " + e);
+      }
+      if (compressor == null || decompressor == null) {
+        compressor = null;
+        decompressor = null;
+      }
+    }
+    this.rawBuffer = new byte[0];
+    this.storedBuffer = new byte[0];
+    this.storedOut = new DataOutputBuffer();
+    this.size = 0L;
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024));
+    this.valid = true;
+    LOG.info("Caching the input of the first epoch into " + file.getAbsolutePath()
+        + (compressor == null ? "" : " with codec " + codecClass) + ", the limit size is " + sizeLimit / 1024 / 1024 + "M");
+  }
+
+  public boolean isValid() {
+    return valid;
+  }
+
+  public void beginSplit(int split) {
+    splitOffsets[split] = size;
+  }
+
+  public void endSplit(int split) {
+    splitLengths[split] = size - splitOffsets[split];
+  }
+
+  public void write(byte[] b, int off, int len) {
+    if (!valid || len == 0) {
+      return;
+    }
+    try {
+      if (compressor == null) {
+        out.writeInt(len);
+        out.writeInt(len);
+        out.write(b, off, len);
+        size += 8 + len;
+      } else {
+        int stored = compress(b, off, len);
+        out.writeInt(len);
+        out.writeInt(stored);
+        out.write(storedOut.getData(), 0, stored);
+        size += 8 + stored;
+      }
+    } catch (IOException e) {
+      LOG.warn("Write the input cache file failed: " + e);
+      invalidate();
+      return;
+    }
+    if (size > sizeLimit) {
+      LOG.info("Inputformat cache file size is:" + size / 1024 / 1024 + "M "
+          + "beyond the limit size:" + sizeLimit / 1024 / 1024 + "M.");
+      invalidate();
+    }
+  }
+
+  /**
+   * Completes the cache file once the first epoch is done and maps it into memory when it is not compressed.
+   */
+  public void finish() {
+    if (!valid) {
+      return;
+    }
+    try {
+      out.close();
+      out = null;
+      if (compressor == null && size <= Integer.MAX_VALUE) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+          mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+          LOG.info("Map the input cache file failed, replay it from the file stream. " + e);
+        }
+      }
+      LOG.info("Input cache file finished, the size is " + size / 1024 / 1024 + "M");
+    } catch (IOException e) {
+      LOG.warn("Close the input cache file failed: " + e);
+      invalidate();
+    }
+  }
+
+  /**
+   * Writes the cached bytes of the split into the given stream.
+   *
+   * @return the number of the bytes written
+   */
+  public long replay(int split, OutputStream target) throws IOException {
+    long offset = splitOffsets[split];
+    long end = offset + splitLengths[split];
+    long replayed = 0L;
+    if (mapped != null) {
+      ByteBuffer buffer = mapped.duplicate();
+      buffer.position((int) offset);
+      while (buffer.position() < end) {
+        int rawLength = buffer.getInt();
+        int storedLength = buffer.getInt();
+        ensureRawBuffer(rawLength);
+        buffer.get(rawBuffer, 0, storedLength);
+        target.write(rawBuffer, 0, rawLength);
+        replayed += rawLength;
+      }
+    } else {
+      FileInputStream fis = new FileInputStream(file);
+      try {
+        fis.getChannel().position(offset);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(fis, 1024 * 1024));
+        while (offset < end) {
+          int rawLength = in.readInt();
+          int storedLength = in.readInt();
+          ensureRawBuffer(rawLength);
+          if (decompressor == null) {
+            in.readFully(rawBuffer, 0, storedLength);
+          } else {
+            ensureStoredBuffer(storedLength);
+            in.readFully(storedBuffer, 0, storedLength);
+            decompress(storedLength, rawLength);
+          }
+          target.write(rawBuffer, 0, rawLength);
+          offset += 8 + storedLength;
+          replayed += rawLength;
+        }
+      } finally {
+        fis.close();
+      }
+    }
+    return replayed;
+  }
+
+  public void close() {
+    mapped = null;
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        LOG.debug("Close the input cache file failed: " + e);
+      }
+      out = null;
+    }
+    if (file.exists() && !file.delete()) {
+      LOG.debug("Delete the input cache file " + file + " failed");
+    }
+  }
+
+  private void invalidate() {
+    valid = false;
+    close();
+    LOG.info("Local cache file deleted and will not use cache.");
+  }
+
+  private int compress(byte[] b, int off, int len) throws IOException {
+    storedOut.reset();
+    compressor.reset();
+    CompressionOutputStream compressed = codec.createOutputStream(storedOut, compressor);
+    compressed.write(b, off, len);
+    compressed.finish();
+    return storedOut.getLength();
+  }
+
+  private void decompress(int storedLength, int rawLength) throws IOException {
+    decompressor.reset();
+    InputStream in = codec.createInputStream(new ByteArrayInputStream(storedBuffer, 0, storedLength), decompressor);
+    try {
+      IOUtils.readFully(in, rawBuffer, 0, rawLength);
+    } catch (IOException e) {
+      throw new IOException("Corrupted frame in the input cache file " + file, e);
+    }
+  }
+
+  private void ensureRawBuffer(int length) {
+    if (rawBuffer.length < length) {
+      rawBuffer = new byte[length];
+    }
+  }
+
+  private void ensureStoredBuffer(int length) {
+    if (storedBuffer.length < length) {
+      storedBuffer = new byte[length];
+    }
+  }
+}
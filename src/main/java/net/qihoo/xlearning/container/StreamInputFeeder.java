@@ -0,0 +1,556 @@
+package net.qihoo.xlearning.container;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.qihoo.xlearning.api.ApplicationContainerProtocol;
+import net.qihoo.xlearning.common.PendingSplit;
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.*;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds the STREAM input splits into the stdin of the xlearning process.
+ * A pool of reader threads prefetches the next splits into bounded queues of byte chunks,
+ * and the feeder thread drains them into the process in split order.
+ * With the input cache enabled, the epochs after the first one are replayed from the local cache file.
+ * The records are written one per line, or in the BINARY record format as a 4-byte big-endian length
+ * followed by the raw bytes of the record. In the ARROW record format the readers parse the records into
+ * Arrow record batches, written after the schema of the stream.
+ */
+public class StreamInputFeeder implements Runnable {
+
+  private static final Log LOG = LogFactory.getLog(StreamInputFeeder.class);
+
+  private static final Chunk END_OF_SPLIT = new Chunk(0);
+
+  private static final Chunk END_OF_INPUT = new Chunk(0);
+
+  private static final long PENDING_SPLIT_RETRY_INTERVAL = 1000L;
+
+  private final Configuration conf;
+
+  private final JobConf jobConf;
+
+  private final InputFormat inputFormat;
+
+  private final List<InputSplit> inputs;
+
+  private final ApplicationContainerProtocol amClient;
+
+  private final XLearningContainerId containerId;
+
+  private final OutputStream out;
+
+  private final int epochs;
+
+  private final int totalTasks;
+
+  private final int readerNum;
+
+  private final int bufferSize;
+
+  private final boolean binary;
+
+  private final byte[] arrowSchema;
+
+  private final int arrowBatchSize;
+
+  private final Semaphore prefetchPermits;
+
+  private final BlockingQueue<Chunk>[] slots;
+
+  private final BlockingQueue<Chunk> freeChunks;
+
+  private final AtomicInteger nextTask;
+
+  private final Object dispatchLock;
+
+  private final AtomicInteger queuedChunks;
+
+  private final AtomicLong records;
+
+  private final long[] recordNums;
+
+  private volatile int readLimit;
+
+  private volatile Throwable readerFailure;
+
+  private volatile Throwable failure;
+
+  private ExecutorService readers;
+
+  private StreamInputCache cache;
+
+  private long writtenBytes;
+
+  private long pipeBlockedNanos;
+
+  private long dataWaitNanos;
+
+  private long queueDepthSum;
+
+  private long queueDepthSamples;
+
+  private int queueDepthMax;
+
+  public StreamInputFeeder(Configuration conf, List<InputSplit> inputs, OutputStream out) {
+    this(conf, inputs, null, null, out);
+  }
+
+  /**
+   * Creates a feeder pulling the splits one by one from the AM until it has no more.
+   */
+  public StreamInputFeeder(Configuration conf, ApplicationContainerProtocol amClient, XLearningContainerId containerId, OutputStream out) {
+    this(conf, null, amClient, containerId, out);
+  }
+
+  @SuppressWarnings("unchecked")
+  private StreamInputFeeder(Configuration conf, List<InputSplit> inputs, ApplicationContainerProtocol amClient,
+                            XLearningContainerId containerId, OutputStream out) {
+    this.conf = conf;
+    this.jobConf = new JobConf(conf);
+    this.inputFormat = ReflectionUtils.newInstance(conf.getClass(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_INPUTF0RMAT_CLASS, InputFormat.class),
+        jobConf);
+    this.inputs = inputs;
+    this.amClient = amClient;
+    this.containerId = containerId;
+    this.out = out;
+    if (inputs == null) {
+      // the AM repeats the splits for each epoch
+      this.epochs = 1;
+      this.totalTasks = Integer.MAX_VALUE;
+    } else {
+      this.epochs = conf.getInt(XLearningConfiguration.XLEARNING_STREAM_EPOCH, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_EPOCH);
+      this.totalTasks = epochs * inputs.size();
+    }
+    this.readerNum = Math.max(1, conf.getInt(XLearningConfiguration.XLEARNING_STREAM_READER_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_READER_THREAD_NUMS));
+    String recordFormat = conf.get(XLearningConfiguration.XLEARNING_STREAM_RECORD_FORMAT, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_RECORD_FORMAT);
+    this.binary = "BINARY".equalsIgnoreCase(recordFormat);
+    // parse the schema here so that a wrong one fails the container at once
+    this.arrowSchema = "ARROW".equalsIgnoreCase(recordFormat) ? newArrowEncoder().encodeSchema() : null;
+    this.arrowBatchSize = Math.max(1, conf.getInt(XLearningConfiguration.XLEARNING_STREAM_ARROW_BATCH_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_ARROW_BATCH_SIZE));
+    this.bufferSize = Math.max(4096, conf.getInt(XLearningConfiguration.XLEARNING_STREAM_BUFFER_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_BUFFER_SIZE));
+    int bufferNum = Math.max(1, conf.getInt(XLearningConfiguration.XLEARNING_STREAM_BUFFER_NUM, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_BUFFER_NUM));
+    // the split being written plus the prefetched ones
+    int slotNum = Math.max(0, conf.getInt(XLearningConfiguration.XLEARNING_STREAM_PREFETCH_SPLITS, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_PREFETCH_SPLITS)) + 1;
+    this.prefetchPermits = new Semaphore(slotNum);
+    this.slots = new BlockingQueue[slotNum];
+    for (int i = 0; i < slotNum; i++) {
+      // one extra place so that the end marker never waits for a data chunk
+      slots[i] = new ArrayBlockingQueue<>(bufferNum + 1);
+    }
+    this.freeChunks = new LinkedBlockingQueue<>();
+    this.nextTask = new AtomicInteger(0);
+    this.dispatchLock = new Object();
+    this.queuedChunks = new AtomicInteger(0);
+    this.records = new AtomicLong(0);
+    this.recordNums = new long[inputs == null ? 0 : inputs.size()];
+    this.readerFailure = null;
+  }
+
+  @Override
+  public void run() {
+    LOG.info("Stream input feeder starting with " + (inputs == null ? "the splits dispatched by the AM" : inputs.size() + " splits, " + epochs + " epochs")
+        + ", " + readerNum + " reader threads and " + (slots.length - 1) + " prefetched splits");
+    if (epochs > 1 && conf.getBoolean(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHE, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHE)) {
+      try {
+        cache = new StreamInputCache(conf, inputs.size());
+      } catch (IOException e) {
+        LOG.warn("Create the input cache file failed, read the splits again in each epoch. " + e);
+      }
+    }
+    // with the cache only the first epoch is read from the splits
+    readLimit = cache == null ? totalTasks : inputs.size();
+    readers = Executors.newFixedThreadPool(readerNum,
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("Stream-Input-Reader #%d")
+            .build());
+    startReaders();
+    try {
+      boolean isShuffle = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHE_SHUFFLE, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHE_SHUFFLE);
+      long startTime = System.currentTimeMillis();
+      if (arrowSchema != null) {
+        out.write(arrowSchema);
+        writtenBytes += arrowSchema.length;
+      }
+      if (inputs == null) {
+        int task = 0;
+        while (feedSplit(task)) {
+          task++;
+        }
+        LOG.info("No more splits from the AM, " + task + " splits finished.");
+        logMetrics(startTime);
+      }
+      for (int epoch = 0; inputs != null && epoch < epochs; epoch++) {
+        LOG.info("Epoch " + (epoch + 1) + " starting...");
+        if (epoch > 0 && cache != null) {
+          List<Integer> order = new ArrayList<>(inputs.size());
+          for (int split = 0; split < inputs.size(); split++) {
+            order.add(split);
+          }
+          if (isShuffle) {
+            Collections.shuffle(order);
+          }
+          for (int split : order) {
+            LOG.info("split " + (split + 1) + " is replayed from the local cache...");
+            writtenBytes += cache.replay(split, out);
+            records.addAndGet(recordNums[split]);
+          }
+        } else {
+          for (int split = 0; split < inputs.size(); split++) {
+            feedSplit(epoch * inputs.size() + split);
+          }
+          if (cache != null) {
+            cache.finish();
+            if (!cache.isValid()) {
+              dropCache();
+            }
+          }
+        }
+        LOG.info("Epoch " + (epoch + 1) + " finished.");
+        logMetrics(startTime);
+      }
+      if (arrowSchema != null) {
+        out.write(ArrowStreamEncoder.END_OF_STREAM);
+      }
+      out.flush();
+    } catch (Exception e) {
+      // recorded before the input is closed, the container fails rather than take the truncated input as complete
+      failure = e;
+      LOG.error("Feeding the stream input failed", e);
+    } finally {
+      readers.shutdownNow();
+      try {
+        out.close();
+      } catch (IOException e) {
+        LOG.debug("Close stdin of xlearning process failed: " + e);
+      }
+      if (cache != null) {
+        cache.close();
+      }
+    }
+  }
+
+  /**
+   * @return the failure that ended the input early, or null
+   */
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  /**
+   * @return false if the AM has no more splits for this feeder
+   */
+  private boolean feedSplit(int task) throws IOException, InterruptedException {
+    int split = inputs == null ? task : task % inputs.size();
+    if (cache != null) {
+      cache.beginSplit(split);
+    }
+    BlockingQueue<Chunk> slot = slots[task % slots.length];
+    boolean started = false;
+    while (true) {
+      long waitStart = System.nanoTime();
+      Chunk chunk = slot.take();
+      dataWaitNanos += System.nanoTime() - waitStart;
+      if (chunk == END_OF_INPUT) {
+        return false;
+      }
+      if (!started) {
+        LOG.info("split " + (split + 1) + " is handling...");
+        started = true;
+      }
+      if (chunk == END_OF_SPLIT) {
+        break;
+      }
+      sampleQueueDepth(queuedChunks.decrementAndGet());
+      long writeStart = System.nanoTime();
+      out.write(chunk.data, 0, chunk.length);
+      pipeBlockedNanos += System.nanoTime() - writeStart;
+      writtenBytes += chunk.length;
+      if (cache != null) {
+        cache.write(chunk.data, 0, chunk.length);
+        if (!cache.isValid()) {
+          dropCache();
+        }
+      }
+      recycle(chunk);
+    }
+    if (readerFailure != null) {
+      throw new IOException("Read split " + (split + 1) + " failed", readerFailure);
+    }
+    if (cache != null) {
+      cache.endSplit(split);
+    }
+    prefetchPermits.release();
+    LOG.info("split " + (split + 1) + " is finished.");
+    return true;
+  }
+
+  private ArrowStreamEncoder newArrowEncoder() {
+    return new ArrowStreamEncoder(conf.get(XLearningConfiguration.XLEARNING_STREAM_ARROW_SCHEMA),
+        conf.get(XLearningConfiguration.XLEARNING_STREAM_ARROW_DELIMITER, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_ARROW_DELIMITER));
+  }
+
+  private void dropCache() {
+    cache = null;
+    readLimit = totalTasks;
+    // the readers of the first epoch may have already stopped at the old limit
+    startReaders();
+  }
+
+  private void startReaders() {
+    for (int i = 0; i < readerNum; i++) {
+      readers.submit(new SplitReader());
+    }
+  }
+
+  private int claimTask() {
+    while (true) {
+      int task = nextTask.get();
+      if (task >= readLimit) {
+        return -1;
+      }
+      if (nextTask.compareAndSet(task, task + 1)) {
+        return task;
+      }
+    }
+  }
+
+  private void sampleQueueDepth(int depth) {
+    queueDepthSum += depth;
+    queueDepthSamples++;
+    if (depth > queueDepthMax) {
+      queueDepthMax = depth;
+    }
+  }
+
+  private void logMetrics(long startTime) {
+    long costTime = Math.max(1, System.currentTimeMillis() - startTime);
+    LOG.info("Stream input feeder metrics: records " + records.get()
+        + ", bytes " + writtenBytes
+        + ", records/sec " + records.get() * 1000 / costTime
+        + ", avg queue depth " + (queueDepthSamples == 0 ? 0 : queueDepthSum / queueDepthSamples)
+        + ", max queue depth " + queueDepthMax
+        + ", blocked on pipe " + TimeUnit.NANOSECONDS.toMillis(pipeBlockedNanos) + "ms"
+        + ", waiting for data " + TimeUnit.NANOSECONDS.toMillis(dataWaitNanos) + "ms");
+  }
+
+  private void recycle(Chunk chunk) {
+    if (chunk.data.length == bufferSize) {
+      chunk.length = 0;
+      freeChunks.offer(chunk);
+    }
+  }
+
+  private Chunk obtainChunk() {
+    Chunk chunk = freeChunks.poll();
+    return chunk == null ? new Chunk(bufferSize) : chunk;
+  }
+
+  private static class Chunk {
+    private final byte[] data;
+    private int length;
+
+    Chunk(int size) {
+      this.data = new byte[size];
+      this.length = 0;
+    }
+  }
+
+  private class SplitReader implements Runnable {
+
+    private BlockingQueue<Chunk> slot;
+
+    private Chunk chunk;
+
+    private final byte[] lengthPrefix = new byte[4];
+
+    private final DataOutputBuffer serialized = new DataOutputBuffer();
+
+    private ArrowStreamEncoder encoder;
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          prefetchPermits.acquire();
+          int task;
+          InputSplit inputSplit = null;
+          Throwable dispatchFailure = null;
+          synchronized (dispatchLock) {
+            task = claimTask();
+            // the splits of the AM are pulled in the task order, otherwise a reader of a later task could get
+            // the last split while the feeder stops at the end of input of an earlier one
+            if (task >= 0 && inputs == null) {
+              try {
+                inputSplit = amClient.getNextSplit(containerId);
+                // the splits of the other workers may still come back, ask again later
+                while (inputSplit instanceof PendingSplit) {
+                  Thread.sleep(PENDING_SPLIT_RETRY_INTERVAL);
+                  inputSplit = amClient.getNextSplit(containerId);
+                }
+                if (inputSplit == null) {
+                  readLimit = task + 1;
+                }
+              } catch (Throwable t) {
+                dispatchFailure = t;
+              }
+            }
+          }
+          if (task < 0) {
+            prefetchPermits.release();
+            return;
+          }
+          slot = slots[task % slots.length];
+          int split = inputs == null ? task : task % inputs.size();
+          try {
+            if (dispatchFailure != null) {
+              throw dispatchFailure;
+            }
+            if (inputs != null) {
+              inputSplit = inputs.get(split);
+            } else if (inputSplit == null) {
+              slot.put(END_OF_INPUT);
+              return;
+            }
+            chunk = obtainChunk();
+            readSplit(split, inputSplit);
+            publish();
+          } catch (InterruptedException e) {
+            throw e;
+          } catch (Throwable t) {
+            LOG.error("Read split " + (split + 1) + " failed", t);
+            readerFailure = t;
+          }
+          slot.put(END_OF_SPLIT);
+        }
+      } catch (InterruptedException e) {
+        LOG.debug("Stream input reader interrupted");
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readSplit(int split, InputSplit inputSplit) throws IOException, InterruptedException {
+      RecordReader reader = inputFormat.getRecordReader(inputSplit, jobConf, Reporter.NULL);
+      long splitRecords = 0;
+      // the batches do not span the splits, each split is fed as a whole
+      encoder = arrowSchema == null ? null : newArrowEncoder();
+      try {
+        Object key = reader.createKey();
+        Object value = reader.createValue();
+        while (true) {
+          try {
+            if (!reader.next(key, value)) {
+              break;
+            }
+          } catch (EOFException e) {
+            e.printStackTrace();
+            break;
+          }
+          appendRecord(value);
+          splitRecords++;
+        }
+        if (encoder != null && encoder.getRows() > 0) {
+          appendArrowBatch();
+        }
+      } finally {
+        if (split < recordNums.length) {
+          recordNums[split] = splitRecords;
+        }
+        records.addAndGet(splitRecords);
+        reader.close();
+      }
+    }
+
+    private void appendRecord(Object value) throws IOException, InterruptedException {
+      if (value instanceof Text) {
+        Text text = (Text) value;
+        appendRecord(text.getBytes(), 0, text.getLength());
+      } else if (value instanceof BytesWritable) {
+        BytesWritable bytes = (BytesWritable) value;
+        appendRecord(bytes.getBytes(), 0, bytes.getLength());
+      } else if (binary && value instanceof Writable) {
+        serialized.reset();
+        ((Writable) value).write(serialized);
+        appendRecord(serialized.getData(), 0, serialized.getLength());
+      } else {
+        byte[] record = value.toString().getBytes(StandardCharsets.UTF_8);
+        appendRecord(record, 0, record.length);
+      }
+    }
+
+    private void appendRecord(byte[] b, int off, int len) throws InterruptedException {
+      if (encoder != null) {
+        encoder.add(b, off, len);
+        if (encoder.getRows() >= arrowBatchSize) {
+          appendArrowBatch();
+        }
+      } else if (binary) {
+        lengthPrefix[0] = (byte) (len >>> 24);
+        lengthPrefix[1] = (byte) (len >>> 16);
+        lengthPrefix[2] = (byte) (len >>> 8);
+        lengthPrefix[3] = (byte) len;
+        append(lengthPrefix, 0, lengthPrefix.length);
+        append(b, off, len);
+      } else {
+        append(b, off, len);
+        appendNewLine();
+      }
+    }
+
+    private void appendArrowBatch() throws InterruptedException {
+      byte[] batch = encoder.encodeBatch();
+      append(batch, 0, batch.length);
+    }
+
+    private void appendNewLine() throws InterruptedException {
+      if (chunk.length == chunk.data.length) {
+        publish();
+        chunk = obtainChunk();
+      }
+      chunk.data[chunk.length++] = '\n';
+    }
+
+    private void append(byte[] b, int off, int len) throws InterruptedException {
+      while (len > 0) {
+        if (chunk.length == chunk.data.length) {
+          publish();
+          chunk = obtainChunk();
+        }
+        int n = Math.min(len, chunk.data.length - chunk.length);
+        System.arraycopy(b, off, chunk.data, chunk.length, n);
+        chunk.length += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    private void publish() throws InterruptedException {
+      if (chunk.length > 0) {
+        queuedChunks.incrementAndGet();
+        slot.put(chunk);
+      } else {
+        recycle(chunk);
+      }
+      chunk = null;
+    }
+  }
+}
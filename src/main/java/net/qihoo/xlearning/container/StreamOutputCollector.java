@@ -0,0 +1,89 @@
+package net.qihoo.xlearning.container;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.RecordWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits the stdout of the xlearning process into lines and writes each line as a Text record. The bytes are
+ * scanned for the newlines in a reusable buffer and handed to the record writer as they are, without decoding
+ * them to strings and encoding them back. A trailing carriage return of a line is dropped as readLine does.
+ */
+public class StreamOutputCollector {
+
+  private static final Log LOG = LogFactory.getLog(StreamOutputCollector.class);
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private final InputStream in;
+
+  private final RecordWriter<Object, Text> writer;
+
+  private final Text record;
+
+  private byte[] buffer;
+
+  public StreamOutputCollector(InputStream in, RecordWriter<Object, Text> writer) {
+    this.in = in;
+    this.writer = writer;
+    this.record = new Text();
+    this.buffer = new byte[BUFFER_SIZE];
+  }
+
+  /**
+   * Writes the lines until the end of the stream, returns the number of lines.
+   */
+  public long collect() throws IOException {
+    long lines = 0L;
+    long bytes = 0L;
+    int start = 0;
+    int end = 0;
+    int n;
+    while ((n = in.read(buffer, end, buffer.length - end)) >= 0) {
+      int scanEnd = end + n;
+      for (int i = end; i < scanEnd; i++) {
+        if (buffer[i] == '\n') {
+          emit(start, i);
+          lines++;
+          start = i + 1;
+        }
+      }
+      end = scanEnd;
+      bytes += n;
+      if (start == end) {
+        start = 0;
+        end = 0;
+      } else if (end == buffer.length) {
+        if (start > 0) {
+          System.arraycopy(buffer, start, buffer, 0, end - start);
+        } else {
+          // a line longer than the buffer
+          byte[] larger = new byte[buffer.length * 2];
+          System.arraycopy(buffer, 0, larger, 0, end);
+          buffer = larger;
+        }
+        end -= start;
+        start = 0;
+      }
+    }
+    if (start < end) {
+      emit(start, end);
+      lines++;
+    }
+    in.close();
+    LOG.info("Collected " + lines + " lines, " + bytes + " bytes of the stream output");
+    return lines;
+  }
+
+  private void emit(int start, int end) throws IOException {
+    if (end > start && buffer[end - 1] == '\r') {
+      end--;
+    }
+    record.set(buffer, start, end - start);
+    writer.write(null, record);
+  }
+}
@@ -7,6 +7,7 @@ import net.qihoo.xlearning.api.ApplicationContainerProtocol;
 import net.qihoo.xlearning.api.XLearningConstants;
 import net.qihoo.xlearning.common.InputInfo;
 import net.qihoo.xlearning.common.OutputInfo;
+import net.qihoo.xlearning.common.ParallelRecordWriter;
 import net.qihoo.xlearning.common.XLearningContainerStatus;
 import net.qihoo.xlearning.common.TextMultiOutputFormat;
 import net.qihoo.xlearning.conf.XLearningConfiguration;
@@ -17,13 +18,22 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.zlib.ZlibCompressor;
+import org.apache.hadoop.io.compress.zlib.ZlibFactory;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.hadoop.yarn.util.ConverterUtils;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.*;
 import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.Shell;
 
 import java.io.*;
 import java.lang.reflect.Field;
@@ -32,10 +42,10 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
 import java.text.SimpleDateFormat;
-import java.util.zip.GZIPOutputStream;
 
 public class XLearningContainer {
 
@@ -49,6 +59,12 @@ public class XLearningContainer {
 
   private String inputFileList;
 
+  private String inputManifestPath;
+
+  private List<String> streamInputNames;
+
+  private Map<String, ShmRingBuffer> streamInputRings;
+
   private XLearningContainerId containerId;
 
   private Map<String, String> envs;
@@ -71,6 +87,18 @@ public class XLearningContainer {
 
   private Heartbeat heartbeatThread;
 
+  private OutputWatcher outputWatcher;
+
+  private Thread streamOutputThread;
+
+  private volatile String streamOutputTaskId;
+
+  private volatile Exception streamOutputFailure;
+
+  private final List<StreamInputFeeder> streamInputFeeders = new CopyOnWriteArrayList<>();
+
+  private volatile Throwable streamInputFailure;
+
   private ContainerReporter containerReporter;
 
   private int heartbeatInterval;
@@ -173,50 +201,37 @@ public class XLearningContainer {
 
     private final String downloadDst;
 
-    DownLoadTask(Path downloadSrc, String downloadDst) throws IOException {
+    private final FileRangeDownloader downloader;
+
+    private final NodeInputCache inputCache;
+
+    private final InputManifest manifest;
+
+    DownLoadTask(Path downloadSrc, String downloadDst, FileRangeDownloader downloader, NodeInputCache inputCache,
+                 InputManifest manifest) throws IOException {
       this.downloadSrc = downloadSrc;
       this.downloadDst = downloadDst;
+      this.downloader = downloader;
+      this.inputCache = inputCache;
+      this.manifest = manifest;
     }
 
     @Override
     public void run() {
       LOG.info("Downloading input file from " + this.downloadSrc + " to " + this.downloadDst);
-      int retry = 0;
-      while (true) {
-        InputStream in = null;
-        OutputStream out = null;
-        try {
-          File exist = new File(downloadDst);
-          if (exist.exists()) {
-            exist.delete();
-          }
-          FileSystem fs = downloadSrc.getFileSystem(conf);
-          in = fs.open(downloadSrc);
-          out = new FileOutputStream(downloadDst);
-          IOUtils.copyBytes(in, out, conf, true);
-          LOG.info("Download input file " + this.downloadSrc + " successful.");
-          break;
-        } catch (Exception e) {
-          if (retry < downloadRetry) {
-            LOG.warn("Download input file " + this.downloadSrc + " failed, retry in " + (++retry), e);
-          } else {
-            LOG.error("Download input file " + this.downloadSrc + " failed after " + downloadRetry + " retry times!", e);
-            reportFailedAndExit();
-          }
-        } finally {
-          if (in != null) {
-            try {
-              in.close();
-            } catch (IOException e) {
-            }
-          }
-          if (out != null) {
-            try {
-              out.close();
-            } catch (IOException e) {
-            }
-          }
+      try {
+        if (inputCache != null) {
+          inputCache.download(downloadSrc, downloadDst);
+        } else {
+          downloader.download(downloadSrc, downloadDst);
+        }
+        if (manifest != null) {
+          manifest.append(downloadDst);
         }
+        LOG.info("Download input file " + this.downloadSrc + " successful.");
+      } catch (Exception e) {
+        LOG.error("Download input file " + this.downloadSrc + " failed after " + downloadRetry + " retry times!", e);
+        reportFailedAndExit();
       }
     }
   }
@@ -226,6 +241,34 @@ public class XLearningContainer {
       ExecutionException {
     if (conf.get(XLearningConfiguration.XLEARNING_INPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STRATEGY).equals("STREAM")) {
       LOG.info("XLEARNING_INPUT_STRATEGY is STREAM, use the stream way to read data from hdfs.");
+      this.streamInputNames = Arrays.asList(amClient.getStreamInputNames());
+      if ("SHM".equalsIgnoreCase(conf.get(XLearningConfiguration.XLEARNING_STREAM_TRANSPORT, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_TRANSPORT))) {
+        String shmDir = conf.get(XLearningConfiguration.XLEARNING_STREAM_SHM_DIR, "");
+        int shmSize = Math.min(1024, Math.max(1, conf.getInt(XLearningConfiguration.XLEARNING_STREAM_SHM_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_SHM_SIZE)));
+        this.streamInputRings = new HashMap<>();
+        Map<String, List<String>> ringInputInfo = new HashMap<>();
+        for (String inputName : streamInputNames) {
+          File ringFile = new File(StringUtils.isBlank(shmDir) ? "." : shmDir, containerId.toString() + "_" + inputName + ".ring");
+          ringFile.deleteOnExit();
+          ShmRingBuffer ring = new ShmRingBuffer(ringFile, shmSize * 1024 * 1024);
+          streamInputRings.put(inputName, ring);
+          ringInputInfo.put(inputName, Collections.singletonList(ring.getPath()));
+        }
+        this.inputFileList = new Gson().toJson(ringInputInfo);
+        LOG.info("Input ring buffer is:" + this.inputFileList);
+      } else if (streamInputNames.size() > 1) {
+        Map<String, List<String>> pipeInputInfo = new HashMap<>();
+        for (String inputName : streamInputNames) {
+          File pipe = new File(inputName);
+          if (pipe.exists()) {
+            throw new IOException("Create the named pipe of stream input " + inputName + " failed, " + pipe.getAbsolutePath() + " already exists");
+          }
+          Shell.execCommand("mkfifo", pipe.getAbsolutePath());
+          pipeInputInfo.put(inputName, Collections.singletonList(pipe.getAbsolutePath()));
+        }
+        this.inputFileList = new Gson().toJson(pipeInputInfo);
+        LOG.info("Input pipe is:" + this.inputFileList);
+      }
     } else if (conf.get(XLearningConfiguration.XLEARNING_INPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STRATEGY).equals("PLACEHOLDER")) {
       List<InputInfo> inputs = Arrays.asList(amClient.getInputSplit(containerId));
       if (inputs.size() == 0) {
@@ -252,13 +295,38 @@ public class XLearningContainer {
         LOG.info("Input path: " + inputInfo.getAliasName() + "@" + inputInfo.getPaths().toString());
       }
 
-      ExecutorService executor = Executors.newFixedThreadPool(
+      final InputManifest manifest;
+      if (conf.getBoolean(XLearningConfiguration.XLEARNING_DOWNLOAD_PROGRESSIVE, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_PROGRESSIVE)) {
+        manifest = new InputManifest(XLearningConstants.INPUT_MANIFEST);
+        this.inputManifestPath = manifest.getPath();
+        LOG.info("Progressive download is enabled, the downloaded files are listed in " + this.inputManifestPath);
+      } else {
+        manifest = null;
+      }
+
+      final ExecutorService executor = Executors.newFixedThreadPool(
           conf.getInt(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_THREAD_NUMS),
           new ThreadFactoryBuilder()
               .setDaemon(true)
               .setNameFormat("Download-File-Thread #%d")
               .build()
       );
+      final ExecutorService rangeExecutor = Executors.newFixedThreadPool(
+          conf.getInt(XLearningConfiguration.XLEARNING_DOWNLOAD_FILE_RANGE_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_DOWNLOAD_FILE_RANGE_THREAD_NUMS),
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("Download-Range-Thread #%d")
+              .build()
+      );
+      FileRangeDownloader downloader = new FileRangeDownloader(conf, rangeExecutor);
+      NodeInputCache inputCache = null;
+      if (!StringUtils.isBlank(conf.get(XLearningConfiguration.XLEARNING_DOWNLOAD_CACHE_DIR))) {
+        try {
+          inputCache = new NodeInputCache(conf, downloader);
+        } catch (IOException e) {
+          LOG.warn("Node input cache is not available, download the inputs directly. " + e);
+        }
+      }
 
       for (InputInfo inputInfo : inputs) {
         String downloadDir = inputInfo.getAliasName();
@@ -272,24 +340,48 @@ public class XLearningContainer {
             String[] fileName = StringUtils.split(path.toString(), '/');
             downloadDst = downloadDir + File.separator + fileName[fileName.length - 1];
           }
-          DownLoadTask downloadTask = new DownLoadTask(path, downloadDst);
+          DownLoadTask downloadTask = new DownLoadTask(path, downloadDst, downloader, inputCache, manifest);
           executor.submit(downloadTask);
         }
       }
 
-      boolean allDownloadTaskFinished = false;
       executor.shutdown();
-      do {
-        try {
-          executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
-          allDownloadTaskFinished = true;
-        } catch (InterruptedException e) {
-        }
-      } while (!allDownloadTaskFinished);
-      LOG.info("All input files download finished.");
+      if (manifest != null) {
+        // the process starts right away and follows the manifest
+        Thread downloadWaitThread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            awaitDownloadFinished(executor, rangeExecutor);
+            try {
+              manifest.finish();
+            } catch (IOException e) {
+              LOG.error("Complete the input manifest failed!", e);
+              reportFailedAndExit();
+            }
+          }
+        });
+        downloadWaitThread.setName("Download-Wait-Thread");
+        downloadWaitThread.setDaemon(true);
+        downloadWaitThread.start();
+      } else {
+        awaitDownloadFinished(executor, rangeExecutor);
+      }
     }
   }
 
+  private void awaitDownloadFinished(ExecutorService executor, ExecutorService rangeExecutor) {
+    boolean allDownloadTaskFinished = false;
+    do {
+      try {
+        executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
+        allDownloadTaskFinished = true;
+      } catch (InterruptedException e) {
+      }
+    } while (!allDownloadTaskFinished);
+    rangeExecutor.shutdownNow();
+    LOG.info("All input files download finished.");
+  }
+
   private void createLocalOutputDir() {
     if (this.conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STRATEGY).equals("STREAM")) {
       LOG.info("XLEARNING_OUTPUT_STRATEGY is STREAM, do not need to create local output dir.");
@@ -317,12 +409,37 @@ public class XLearningContainer {
   private void uploadOutputFiles() throws IOException {
     if (this.conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STRATEGY).equals("STREAM")) {
       LOG.info("XLEARNING_OUTPUT_STRATEGY is STREAM, do not need to upload local output files.");
+      if (streamOutputThread != null) {
+        try {
+          streamOutputThread.join();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted while waiting for the stream output");
+        }
+        if (streamOutputTaskId == null) {
+          throw new IOException("Stream output of container " + containerId + " is not completed", streamOutputFailure);
+        }
+        if (this.conf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_COMMIT_DIRECT, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMMIT_DIRECT)) {
+          for (OutputInfo outputInfo : amClient.getOutputLocation()) {
+            Path taskPath = new Path(outputInfo.getDfsLocation() + "/_temporary/" + containerId.toString() + "/_temporary/0/_temporary/" + streamOutputTaskId);
+            Path finalResultPath = new Path(outputInfo.getDfsLocation() + "/" + containerId.toString());
+            FileSystem dfs = finalResultPath.getFileSystem(conf);
+            if (dfs.exists(taskPath)) {
+              if (!dfs.rename(taskPath, finalResultPath)) {
+                throw new IOException("Commit the stream output " + taskPath + " to " + finalResultPath + " failed");
+              }
+              LOG.info("Committed the stream output to " + finalResultPath);
+            }
+          }
+        }
+      }
     } else {
       List<OutputInfo> outputs = Arrays.asList(amClient.getOutputLocation());
       for (OutputInfo s : outputs) {
         LOG.info("Output path: " + s.getLocalLocation() + "#" + s.getDfsLocation());
       }
-      if (outputs.size() > 0) {
+      if (outputWatcher != null) {
+        outputWatcher.finish();
+      } else if (outputs.size() > 0) {
         for (OutputInfo outputInfo : outputs) {
           FileSystem localFs = FileSystem.getLocal(conf);
           Path localPath = new Path(outputInfo.getLocalLocation());
@@ -333,10 +450,20 @@ public class XLearningContainer {
             dfs.delete(remotePath);
           }
           if (localFs.exists(localPath)) {
-            dfs.copyFromLocalFile(false, false, localPath, remotePath);
+            heartbeatThread.getOutputUploader().upload(localPath, remotePath);
             LOG.info("Upload output " + localPath + " to remote path " + remotePath + " finished.");
           }
-          localFs.close();
+        }
+      }
+      if (this.conf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_COMMIT_DIRECT, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_COMMIT_DIRECT)) {
+        for (OutputInfo outputInfo : outputs) {
+          Path remotePath = new Path(outputInfo.getDfsLocation() + "/_temporary/" + containerId.toString());
+          Path finalResultPath = new Path(outputInfo.getDfsLocation());
+          FileSystem dfs = remotePath.getFileSystem(conf);
+          if (dfs.exists(remotePath) && !dfs.rename(remotePath, finalResultPath)) {
+            throw new IOException("Commit the output " + remotePath + " to " + finalResultPath + " failed");
+          }
+          LOG.info("Committed the output " + remotePath + " to " + finalResultPath);
         }
       }
     }
@@ -471,6 +598,9 @@ public class XLearningContainer {
     envList.add("CLASSPATH=" + "./:" + System.getenv("CLASSPATH") + ":" + System.getProperty("java.class.path"));
     envList.add("PYTHONUNBUFFERED=1");
     envList.add(XLearningConstants.Environment.XLEARNING_INPUT_FILE_LIST.toString() + "=" + this.inputFileList);
+    if (this.inputManifestPath != null) {
+      envList.add(XLearningConstants.Environment.XLEARNING_INPUT_MANIFEST.toString() + "=" + this.inputManifestPath);
+    }
 
     if ("TENSORFLOW".equals(xlearningAppType)) {
       envList.add(XLearningConstants.Environment.XLEARNING_TF_INDEX.toString() + "=" + this.index);
@@ -516,76 +646,29 @@ public class XLearningContainer {
     //close reserved socket as tf will bind this port later
     this.reservedSocket.close();
     final Process xlearningProcess = rt.exec(command, env);
-    Date now = new Date();
-    heartbeatThread.setContainersStartTime(now.toString());
+    heartbeatThread.setContainersStartTime(System.currentTimeMillis());
 
     if (conf.get(XLearningConfiguration.XLEARNING_INPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STRATEGY).equals("STREAM")) {
-      LOG.info("Starting thread to redirect stdin of xlearning process");
-      Thread stdinRedirectThread = new Thread(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            OutputStreamWriter osw = new OutputStreamWriter(xlearningProcess.getOutputStream());
-            File gzFile = new File(conf.get(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHEFILE_NAME, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHEFILE_NAME));
-            GZIPOutputStream gos = new GZIPOutputStream(new FileOutputStream(gzFile));
-            boolean isCache = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHE, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHE);
-            List<InputSplit> inputs = Arrays.asList(amClient.getStreamInputSplit(containerId));
-            JobConf jobConf = new JobConf(conf);
-            RecordReader reader;
-            InputFormat inputFormat = ReflectionUtils.newInstance(conf.getClass(XLearningConfiguration.XLEARNING_INPUTF0RMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_INPUTF0RMAT_CLASS, InputFormat.class),
-                jobConf);
-            for (int j = 0; j < conf.getInt(XLearningConfiguration.XLEARNING_STREAM_EPOCH, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_EPOCH); j++) {
-              LOG.info("Epoch " + (j + 1) + " starting...");
-              for (int i = 0, len = inputs.size(); i < len; i++) {
-                LOG.info("split " + (i + 1) + " is handling...");
-                reader = inputFormat.getRecordReader(inputs.get(i), jobConf, Reporter.NULL);
-                Object key = reader.createKey();
-                Object value = reader.createValue();
-                Boolean finished = false;
-                while (!finished) {
-                  try {
-                    finished = !reader.next(key, value);
-                    if (finished) {
-                      break;
-                    }
-                    osw.write(value.toString());
-                    osw.write("\n");
-                    if (j == 0 && isCache) {
-                      if (conf.getInt(XLearningConfiguration.XLEARNING_STREAM_EPOCH, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_EPOCH) > 1) {
-                        gos.write(value.toString().getBytes());
-                        gos.write("\n".getBytes());
-
-                        if ((gzFile.length() / 1024 / 1024) > conf.getInt(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT)) {
-                          LOG.info("Inputformat cache file size is:" + gzFile.length() / 1024 / 1024 + "M "
-                              + "beyond the limit size:" + conf.getInt(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHESIZE_LIMIT) + "M.");
-                          gzFile.delete();
-                          LOG.info("Local cache file deleted and will not use cache.");
-                          isCache = false;
-                        }
-                      }
-                    }
-                  } catch (EOFException e) {
-                    finished = true;
-                    e.printStackTrace();
-                  }
-                }
-                reader.close();
-                LOG.info("split " + (i + 1) + " is finished.");
-              }
-              LOG.info("Epoch " + (j + 1) + " finished.");
-              if (isCache) {
-                break;
-              }
-            }
-            osw.close();
-            gos.close();
-          } catch (Exception e) {
-            LOG.warn("Exception in thread stdinRedirectThread");
-            e.printStackTrace();
-          }
+      if (streamInputRings != null || streamInputNames.size() > 1) {
+        LOG.info("Starting threads to feed the " + (streamInputRings != null ? "ring buffers" : "named pipes") + " of " + streamInputNames.size() + " stream inputs");
+        xlearningProcess.getOutputStream().close();
+        for (String inputName : streamInputNames) {
+          startStreamInputChannel(inputName);
         }
-      });
-      stdinRedirectThread.start();
+      } else {
+        LOG.info("Starting thread to redirect stdin of xlearning process");
+        StreamInputFeeder feeder;
+        if (conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_STREAM_DYNAMIC, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_STREAM_DYNAMIC)) {
+          feeder = new StreamInputFeeder(conf, amClient, containerId, xlearningProcess.getOutputStream());
+        } else {
+          List<InputSplit> inputs = streamInputNames.isEmpty() ? new ArrayList<InputSplit>()
+              : Arrays.asList(amClient.getStreamInputSplit(containerId, streamInputNames.get(0)));
+          feeder = new StreamInputFeeder(conf, inputs, xlearningProcess.getOutputStream());
+        }
+        streamInputFeeders.add(feeder);
+        Thread stdinRedirectThread = new Thread(feeder);
+        stdinRedirectThread.start();
+      }
     }
 
     List<OutputInfo> outputs = Arrays.asList(amClient.getOutputLocation());
@@ -595,43 +678,133 @@ public class XLearningContainer {
         @Override
         public void run() {
           try {
-            BufferedReader reader;
-            reader = new BufferedReader(new InputStreamReader(xlearningProcess.getInputStream()));
+            boolean binary = "BINARY".equalsIgnoreCase(conf.get(XLearningConfiguration.XLEARNING_STREAM_RECORD_FORMAT, XLearningConfiguration.DEFAULT_XLEARNING_STREAM_RECORD_FORMAT));
             List<OutputInfo> outputs = Arrays.asList(amClient.getOutputLocation());
             JobConf jobConf = new JobConf(conf);
-            jobConf.setOutputKeyClass(Text.class);
-            jobConf.setOutputValueClass(Text.class);
+            Class<? extends OutputFormat> outputFormatClass = conf.getClass(XLearningConfiguration.XLEARNING_OUTPUTFORMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUTF0RMAT_CLASS, OutputFormat.class);
             jobConf.setBoolean("mapred.output.compress", true);
-            jobConf.set("mapred.output.compression.codec", "org.apache.hadoop.io.compress.GzipCodec");
-            jobConf.setOutputFormat(TextMultiOutputFormat.class);
+            if (binary) {
+              jobConf.setOutputKeyClass(NullWritable.class);
+              jobConf.setOutputValueClass(BytesWritable.class);
+              // GzipCodec needs the native zlib for the SequenceFile
+              jobConf.set("mapred.output.compression.codec", "org.apache.hadoop.io.compress.DefaultCodec");
+              jobConf.set("mapred.output.compression.type", SequenceFile.CompressionType.BLOCK.toString());
+              if (outputFormatClass == TextMultiOutputFormat.class) {
+                outputFormatClass = SequenceFileOutputFormat.class;
+              }
+              LOG.info("Stream output in BINARY record format, written by " + outputFormatClass.getName());
+            } else {
+              jobConf.setOutputKeyClass(Text.class);
+              jobConf.setOutputValueClass(Text.class);
+              String codecName = conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_CODEC, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_CODEC);
+              if ("none".equalsIgnoreCase(codecName)) {
+                jobConf.setBoolean("mapred.output.compress", false);
+              } else {
+                Class<? extends CompressionCodec> codecClass = new CompressionCodecFactory(jobConf).getCodecClassByName(codecName);
+                if (codecClass == null) {
+                  throw new IOException("Unknown stream output codec " + codecName);
+                }
+                jobConf.set("mapred.output.compression.codec", codecClass.getName());
+              }
+            }
+            int codecLevel = conf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_CODEC_LEVEL, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_CODEC_LEVEL);
+            if (codecLevel >= 0) {
+              ZlibFactory.setCompressionLevel(jobConf, ZlibCompressor.CompressionLevel.values()[Math.min(codecLevel, 9)]);
+              // without native zlib, GzipCodec compresses with java.util.zip at the default level
+              if (GzipCodec.class.getName().equals(jobConf.get("mapred.output.compression.codec"))
+                  && !ZlibFactory.isNativeZlibLoaded(jobConf)) {
+                LOG.warn("Native zlib is not loaded, the compression level " + codecLevel + " of the gzip stream output is ignored");
+              }
+            }
+            if (conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_FILE_SIZE) != null) {
+              jobConf.setLong(TextMultiOutputFormat.MR_REDUCE_MAX_FILE_PER_FILE,
+                  conf.getLong(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_FILE_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_FILE_SIZE));
+            }
+            jobConf.setOutputFormat(outputFormatClass);
 
             Path remotePath = new Path(outputs.get(0).getDfsLocation() + "/_temporary/" + containerId.toString());
             FileSystem dfs = remotePath.getFileSystem(jobConf);
             jobConf.set(XLearningConstants.STREAM_OUTPUT_DIR, remotePath.makeQualified(dfs).toString());
-            OutputFormat outputFormat = ReflectionUtils.newInstance(conf.getClass(XLearningConfiguration.XLEARNING_OUTPUTFORMAT_CLASS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUTF0RMAT_CLASS, OutputFormat.class),
-                jobConf);
-            outputFormat.checkOutputSpecs(dfs, jobConf);
+            ReflectionUtils.newInstance(outputFormatClass, jobConf).checkOutputSpecs(dfs, jobConf);
             JobID jobID = new JobID(new SimpleDateFormat("yyyyMMddHHmm").format(new Date()), 0);
             TaskAttemptID taId = new TaskAttemptID(new TaskID(jobID, true, 0), 0);
             jobConf.set("mapred.tip.id", taId.getTaskID().toString());
             jobConf.set("mapred.task.id", taId.toString());
             jobConf.set("mapred.job.id", jobID.toString());
             amClient.reportMapedTaskID(containerId, taId.toString());
-            RecordWriter writer = outputFormat.getRecordWriter(dfs, jobConf, "part-r", Reporter.NULL);
-            String xlearningStreamResultLine;
-            while ((xlearningStreamResultLine = reader.readLine()) != null) {
-              writer.write(null, xlearningStreamResultLine);
+            RecordWriter writer;
+            if (!binary && conf.getBoolean(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_ROUTE_ENABLE, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_ROUTE_ENABLE)) {
+              final JobConf routeJobConf = jobConf;
+              final Class<? extends OutputFormat> routeOutputFormatClass = outputFormatClass;
+              final FileSystem routeDfs = dfs;
+              final List<OutputInfo> routeOutputs = outputs;
+              final Map<Integer, JobConf> outputJobConfs = new HashMap<>();
+              outputJobConfs.put(0, jobConf);
+              List<String> outputNames = new ArrayList<>(outputs.size());
+              for (OutputInfo outputInfo : outputs) {
+                outputNames.add(outputInfo.getLocalLocation());
+              }
+              String delimiter = conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_ROUTE_DELIMITER, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_ROUTE_DELIMITER);
+              delimiter = "\\t".equals(delimiter) ? "\t" : delimiter;
+              if (delimiter.getBytes(StandardCharsets.UTF_8).length != 1) {
+                throw new IOException("The delimiter of the stream output route must be a single byte");
+              }
+              writer = new RoutingRecordWriter(outputNames, new RoutingRecordWriter.WriterFactory() {
+                @Override
+                public RecordWriter<Object, Text> create(int output, String partition) throws IOException {
+                  JobConf outputJobConf = outputJobConfs.get(output);
+                  if (outputJobConf == null) {
+                    outputJobConf = new JobConf(routeJobConf);
+                    Path outputRemotePath = new Path(routeOutputs.get(output).getDfsLocation() + "/_temporary/" + containerId.toString());
+                    outputJobConf.set(XLearningConstants.STREAM_OUTPUT_DIR, outputRemotePath.makeQualified(routeDfs).toString());
+                    ReflectionUtils.newInstance(routeOutputFormatClass, outputJobConf).checkOutputSpecs(routeDfs, outputJobConf);
+                    outputJobConfs.put(output, outputJobConf);
+                  }
+                  return createStreamOutputWriter(outputJobConf, routeOutputFormatClass, routeDfs,
+                      partition == null ? "part-r" : partition + "/part-r");
+                }
+              }, delimiter.getBytes(StandardCharsets.UTF_8)[0], conf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_ROUTE_MAX, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_ROUTE_MAX));
+              LOG.info("Routing the stream output lines to " + outputNames.size() + " outputs by the first field");
+            } else {
+              writer = createStreamOutputWriter(jobConf, outputFormatClass, dfs, "part-r");
+            }
+            if (binary) {
+              DataInputStream in = new DataInputStream(new BufferedInputStream(xlearningProcess.getInputStream()));
+              BytesWritable record = new BytesWritable();
+              while (true) {
+                int first = in.read();
+                if (first < 0) {
+                  break;
+                }
+                int length;
+                try {
+                  length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+                } catch (EOFException e) {
+                  throw new IOException("Truncated record length at the end of the stream output", e);
+                }
+                if (length < 0) {
+                  throw new IOException("Invalid record length " + length + " in the stream output");
+                }
+                record.setSize(length);
+                in.readFully(record.getBytes(), 0, length);
+                writer.write(NullWritable.get(), record);
+              }
+              in.close();
+            } else {
+              new StreamOutputCollector(xlearningProcess.getInputStream(), writer).collect();
             }
             writer.close(Reporter.NULL);
-            reader.close();
+            streamOutputTaskId = taId.toString();
             dfs.close();
           } catch (Exception e) {
+            streamOutputFailure = e;
             LOG.warn("Exception in thread stdoutRedirectThread");
             e.printStackTrace();
           }
         }
       });
       stdoutRedirectThread.start();
+      streamOutputThread = stdoutRedirectThread;
     } else {
       LOG.info("Starting thread to redirect stdout of xlearning process");
       Thread stdoutRedirectThread = new Thread(new Runnable() {
@@ -663,7 +836,7 @@ public class XLearningContainer {
           String xlearningStderrLog;
           while ((xlearningStderrLog = reader.readLine()) != null) {
             if (xlearningStderrLog.contains("reporter progress")) {
-              heartbeatThread.setProgressLog(xlearningStderrLog);
+              reportProgress(xlearningStderrLog);
             } else {
               LOG.info(xlearningStderrLog);
             }
@@ -676,6 +849,20 @@ public class XLearningContainer {
     });
     stderrRedirectThread.start();
 
+    if (!this.conf.get(XLearningConfiguration.XLEARNING_OUTPUT_STRATEGY, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STRATEGY).equals("STREAM")
+        && this.conf.getBoolean(XLearningConfiguration.XLEARNING_UPLOAD_INCREMENTAL_ENABLE, XLearningConfiguration.DEFAULT_XLEARNING_UPLOAD_INCREMENTAL_ENABLE)
+        && outputs.size() > 0 && !this.role.equals("ps") && !this.role.equals("server")) {
+      OutputWatcher watcher = new OutputWatcher(conf, heartbeatThread.getOutputUploader(), outputs, containerId);
+      try {
+        watcher.prepare();
+        watcher.start();
+        outputWatcher = watcher;
+        LOG.info("Started to upload the completed output files in the background");
+      } catch (IOException e) {
+        LOG.warn("Prepare the background upload of the output files failed, upload them after the process exits", e);
+      }
+    }
+
     heartbeatThread.setContainerStatus(XLearningContainerStatus.RUNNING);
 
     //Start board process
@@ -764,7 +951,7 @@ public class XLearningContainer {
     }
 
     int code = -1;
-    while (code == -1 && !heartbeatThread.isXLearningTrainCompleted()) {
+    while (code == -1 && !heartbeatThread.isXLearningTrainCompleted() && getStreamInputFailure() == null) {
       Utilities.sleep(updateAppStatusInterval);
       try {
         code = xlearningProcess.exitValue();
@@ -773,6 +960,14 @@ public class XLearningContainer {
       }
     }
 
+    // the process sees the end of a failed input as a clean one, it may exit normally on the truncated input
+    Throwable inputFailure = getStreamInputFailure();
+    if (inputFailure != null) {
+      LOG.error("Stream input of container " + containerId + " failed, the xlearning process is stopped", inputFailure);
+      xlearningProcess.destroy();
+      return false;
+    }
+
     if (this.role.equals(XLearningConstants.PS)) {
       if (code == -1) {
         xlearningProcess.destroy();
@@ -801,17 +996,94 @@ public class XLearningContainer {
     return true;
   }
 
+  private Throwable getStreamInputFailure() {
+    if (streamInputFailure != null) {
+      return streamInputFailure;
+    }
+    for (StreamInputFeeder feeder : streamInputFeeders) {
+      if (feeder.getFailure() != null) {
+        return feeder.getFailure();
+      }
+    }
+    return null;
+  }
+
+  private RecordWriter createStreamOutputWriter(JobConf jobConf, Class<? extends OutputFormat> outputFormatClass,
+                                                FileSystem dfs, String name) throws IOException {
+    int writerNum = conf.getInt(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_WRITER_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_WRITER_NUMS);
+    if (writerNum <= 1) {
+      return ReflectionUtils.newInstance(outputFormatClass, jobConf).getRecordWriter(dfs, jobConf, name, Reporter.NULL);
+    }
+    LOG.info("Writing the stream output " + name + " with " + writerNum + " parallel writers");
+    List<RecordWriter> writers = new ArrayList<>(writerNum);
+    for (int i = 0; i < writerNum; i++) {
+      // the output formats keep the state of their current part file
+      OutputFormat partOutputFormat = ReflectionUtils.newInstance(outputFormatClass, jobConf);
+      writers.add(partOutputFormat.getRecordWriter(dfs, jobConf, name + "-" + i, Reporter.NULL));
+    }
+    return new ParallelRecordWriter(writers,
+        conf.getLong(XLearningConfiguration.XLEARNING_OUTPUT_STREAM_WRITER_BLOCK_SIZE, XLearningConfiguration.DEFAULT_XLEARNING_OUTPUT_STREAM_WRITER_BLOCK_SIZE));
+  }
+
+  private void startStreamInputChannel(final String inputName) {
+    final File pipe = new File(inputName);
+    final ShmRingBuffer ring = streamInputRings == null ? null : streamInputRings.get(inputName);
+    final List<InputSplit> inputs = Arrays.asList(amClient.getStreamInputSplit(containerId, inputName));
+    final Configuration pipeConf = new Configuration(conf);
+    // each feeder keeps its own input cache file
+    pipeConf.set(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHEFILE_NAME,
+        conf.get(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHEFILE_NAME, XLearningConfiguration.DEFAULT_XLEARNING_INPUTFORMAT_CACHEFILE_NAME) + "_" + inputName);
+    Thread inputThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        OutputStream out = ring;
+        try {
+          if (out == null) {
+            // blocks until the xlearning process opens the pipe for reading
+            out = new FileOutputStream(pipe);
+          }
+        } catch (IOException e) {
+          streamInputFailure = e;
+          LOG.error("Open the named pipe of stream input " + inputName + " failed", e);
+          return;
+        }
+        StreamInputFeeder feeder = new StreamInputFeeder(pipeConf, inputs, out);
+        streamInputFeeders.add(feeder);
+        feeder.run();
+      }
+    }, "Stream-Input-Thread " + inputName);
+    // the process may exit without reading the whole input
+    inputThread.setDaemon(true);
+    inputThread.start();
+  }
+
+  private void reportProgress(String progressLog) {
+    // parsed once here, the heartbeat carries the progress as a float
+    String[] progress = progressLog.split(":");
+    float percentProgress = -1.0f;
+    if (progress.length == 2) {
+      try {
+        percentProgress = Float.parseFloat(progress[1]);
+      } catch (NumberFormatException e) {
+        percentProgress = -1.0f;
+      }
+    }
+    if (percentProgress < 0.0f || percentProgress > 1.0f) {
+      LOG.warn("progress log format error: " + progressLog);
+    } else {
+      heartbeatThread.setProgress(percentProgress);
+    }
+  }
+
   private void reportFailedAndExit() {
-    Date now = new Date();
-    heartbeatThread.setContainersFinishTime(now.toString());
+    heartbeatThread.setContainersFinishTime(System.currentTimeMillis());
     heartbeatThread.setContainerStatus(XLearningContainerStatus.FAILED);
     Utilities.sleep(heartbeatInterval);
     System.exit(-1);
   }
 
   private void reportSucceededAndExit() {
-    Date now = new Date();
-    heartbeatThread.setContainersFinishTime(now.toString());
+    heartbeatThread.setContainersFinishTime(System.currentTimeMillis());
     heartbeatThread.setContainerStatus(XLearningContainerStatus.SUCCEEDED);
     Utilities.sleep(heartbeatInterval);
     System.exit(0);
@@ -0,0 +1,148 @@
+package net.qihoo.xlearning.util;
+
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.GlobPattern;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lists the files under the input paths recursively, listing the sub directories in parallel.
+ * The input paths may be glob patterns, and the hidden files (starting with "_" or ".", such as
+ * _SUCCESS) found in the directories or by the wildcards are skipped unless configured otherwise.
+ * An input path named explicitly is listed even if its name is hidden.
+ */
+public class InputPathLister {
+
+  private static final Log LOG = LogFactory.getLog(InputPathLister.class);
+
+  private static final PathFilter HIDDEN_FILE_FILTER = new PathFilter() {
+    @Override
+    public boolean accept(Path path) {
+      String name = path.getName();
+      return !name.startsWith("_") && !name.startsWith(".");
+    }
+  };
+
+  private final Configuration conf;
+
+  private final PathFilter filter;
+
+  private final ForkJoinPool pool;
+
+  private final AtomicLong listCalls;
+
+  public InputPathLister(Configuration conf) {
+    this.conf = conf;
+    this.filter = conf.getBoolean(XLearningConfiguration.XLEARNING_INPUT_FILTER_HIDDEN, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_FILTER_HIDDEN)
+        ? HIDDEN_FILE_FILTER : null;
+    this.pool = new ForkJoinPool(Math.max(1, conf.getInt(XLearningConfiguration.XLEARNING_INPUT_LISTING_THREAD_NUMS, XLearningConfiguration.DEFAULT_XLEARNING_INPUT_LISTING_THREAD_NUMS)));
+    this.listCalls = new AtomicLong(0);
+  }
+
+  public List<FileStatus> list(Path path) throws IOException {
+    long startTime = System.currentTimeMillis();
+    long startCalls = listCalls.get();
+    FileSystem fs = path.getFileSystem(conf);
+    listCalls.incrementAndGet();
+    // an input path named explicitly is listed even if hidden, only the files found by a wildcard are filtered
+    boolean wildcard = new GlobPattern(path.toString()).hasWildcard();
+    FileStatus[] matches = filter == null || !wildcard ? fs.globStatus(path) : fs.globStatus(path, filter);
+    if (matches == null || (matches.length == 0 && !wildcard)) {
+      throw new FileNotFoundException("Input path " + path + " does not exist");
+    }
+    List<FileStatus> fileStatuses = new ArrayList<>();
+    List<ListTask> tasks = new ArrayList<>();
+    for (FileStatus match : matches) {
+      if (match.isDirectory()) {
+        tasks.add(new ListTask(fs, match.getPath()));
+      } else {
+        fileStatuses.add(match);
+      }
+    }
+    try {
+      for (ListTask task : tasks) {
+        pool.execute(task);
+      }
+      for (ListTask task : tasks) {
+        fileStatuses.addAll(task.join());
+      }
+    } catch (ListingException e) {
+      Throwable cause = e;
+      while (!(cause instanceof IOException) && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      throw cause instanceof IOException ? (IOException) cause : new IOException(e);
+    }
+    LOG.info("List input path " + path + " got " + fileStatuses.size() + " files in "
+        + (System.currentTimeMillis() - startTime) + "ms with " + (listCalls.get() - startCalls) + " NameNode calls");
+    return fileStatuses;
+  }
+
+  public void close() {
+    pool.shutdownNow();
+  }
+
+  private class ListTask extends RecursiveTask<List<FileStatus>> {
+
+    private final FileSystem fs;
+
+    private final Path dir;
+
+    ListTask(FileSystem fs, Path dir) {
+      this.fs = fs;
+      this.dir = dir;
+    }
+
+    @Override
+    protected List<FileStatus> compute() {
+      FileStatus[] children;
+      try {
+        listCalls.incrementAndGet();
+        children = filter == null ? fs.listStatus(dir) : fs.listStatus(dir, filter);
+      } catch (IOException e) {
+        throw new ListingException(e);
+      }
+      // keep the files in the listing order, with the sub directories expanded in place
+      List<Object> entries = new ArrayList<>(children.length);
+      for (FileStatus child : children) {
+        if (child.isDirectory()) {
+          ListTask subTask = new ListTask(fs, child.getPath());
+          subTask.fork();
+          entries.add(subTask);
+        } else {
+          entries.add(child);
+        }
+      }
+      List<FileStatus> files = new ArrayList<>();
+      for (Object entry : entries) {
+        if (entry instanceof ListTask) {
+          files.addAll(((ListTask) entry).join());
+        } else {
+          files.add((FileStatus) entry);
+        }
+      }
+      LOG.debug("input path: " + dir + ", files: " + files.size());
+      return files;
+    }
+  }
+
+  private static class ListingException extends RuntimeException {
+
+    ListingException(IOException cause) {
+      super(cause);
+    }
+  }
+}
@@ -37,11 +37,11 @@ public final class Utilities {
     if (fileStatuses == null) {
       fileStatuses = new ArrayList<>(1000);
     }
-    LOG.info("input path: " + path.toString());
+    LOG.debug("input path: " + path.toString());
     FileStatus[] fileStatus = fs.listStatus(path);
     if (fileStatus != null && fileStatus.length > 0) {
       for (FileStatus f : fileStatus) {
-        if (fs.isDirectory(f.getPath())) {
+        if (f.isDirectory()) {
           listStatusRecursively(f.getPath(), fs, fileStatuses);
         } else {
           fileStatuses.add(f);
@@ -51,4 +51,6 @@ public interface AMParams {
 
   public static final String CONTAINER_FINISH_TIME = "container.finish.time";
 
+  public static final String STREAM_INPUT_LOCALITY = "stream.input.locality";
+
 }
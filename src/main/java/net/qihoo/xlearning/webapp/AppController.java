@@ -63,7 +63,7 @@ public class AppController extends Controller implements AMParams {
 
     List<Container> workerContainers = app.context.getWorkerContainers();
     List<Container> psContainers = app.context.getPsContainers();
-    Map<XLearningContainerId, String> reporterProgress = app.context.getReporterProgress();
+    Map<XLearningContainerId, Float> reporterProgress = app.context.getReporterProgress();
     Map<XLearningContainerId, String> containersAppStartTime = app.context.getContainersAppStartTime();
     Map<XLearningContainerId, String> containersAppFinishTime = app.context.getContainersAppFinishTime();
     set(CONTAINER_NUMBER, String.valueOf(workerContainers.size() + psContainers.size()));
@@ -90,25 +90,11 @@ public class AppController extends Controller implements AMParams {
         }
       }
 
-      if (reporterProgress.get(new XLearningContainerId(container.getId())) != null && !reporterProgress.get(new XLearningContainerId(container.getId())).equals("")) {
-        String progressLog = reporterProgress.get(new XLearningContainerId(container.getId()));
-        String[] progress = progressLog.toString().split(":");
-        if (progress.length != 2) {
-          set(CONTAINER_REPORTER_PROGRESS + i, "progress log format error");
-        } else {
-          try {
-            Float percentProgress = Float.parseFloat(progress[1]);
-            if (percentProgress < 0.0 || percentProgress > 1.0) {
-              set(CONTAINER_REPORTER_PROGRESS + i, "progress log format error");
-            } else {
-              DecimalFormat df = new DecimalFormat("0.00");
-              df.setRoundingMode(RoundingMode.HALF_UP);
-              set(CONTAINER_REPORTER_PROGRESS + i, df.format((Float.parseFloat(progress[1]) * 100)) + "%");
-            }
-          } catch (Exception e) {
-            set(CONTAINER_REPORTER_PROGRESS + i, "progress log format error");
-          }
-        }
+      Float percentProgress = reporterProgress.get(new XLearningContainerId(container.getId()));
+      if (percentProgress != null) {
+        DecimalFormat df = new DecimalFormat("0.00");
+        df.setRoundingMode(RoundingMode.HALF_UP);
+        set(CONTAINER_REPORTER_PROGRESS + i, df.format(percentProgress * 100) + "%");
       } else {
         set(CONTAINER_REPORTER_PROGRESS + i, "0.00%");
       }
@@ -169,6 +155,8 @@ public class AppController extends Controller implements AMParams {
       i++;
     }
 
+    set(STREAM_INPUT_LOCALITY, app.context.getStreamInputLocality());
+
     set(TIMESTAMP_TOTAL, String.valueOf(app.context.getModelSavingList().size()));
     int j = 0;
     for (i = app.context.getModelSavingList().size(); i > 0; i--) {
@@ -113,6 +113,9 @@ public class InfoBlock extends HtmlBlock implements AMParams {
         tbody._()._();
       }
 
+      if (!$(STREAM_INPUT_LOCALITY).equals("")) {
+        html.div().$style("margin:20px 2px;")._("Stream input locality: " + $(STREAM_INPUT_LOCALITY))._();
+      }
       html.div().$style("margin:20px 2px;")._(" ")._();
       int saveModelTotal = Integer.parseInt($(SAVE_MODEL_TOTAL));
       int saveModelSize = Integer.parseInt($(OUTPUT_TOTAL));
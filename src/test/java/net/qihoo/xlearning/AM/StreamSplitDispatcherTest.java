@@ -0,0 +1,59 @@
+package net.qihoo.xlearning.AM;
+
+import net.qihoo.xlearning.common.PendingSplit;
+import net.qihoo.xlearning.container.XLearningContainerId;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StreamSplitDispatcherTest {
+
+  private static XLearningContainerId container(int id) {
+    ApplicationAttemptId attemptId = ApplicationAttemptId.newInstance(ApplicationId.newInstance(1L, 1), 1);
+    return new XLearningContainerId(ContainerId.newContainerId(attemptId, id));
+  }
+
+  private static InputSplit[] splits(int count) {
+    InputSplit[] splits = new InputSplit[count];
+    for (int i = 0; i < count; i++) {
+      splits[i] = new FileSplit(new Path("/input/part-" + i), 0, 1, new String[0]);
+    }
+    return splits;
+  }
+
+  @Test
+  public void testReclaimedSplitsReachWaitingWorker() {
+    StreamSplitDispatcher dispatcher = new StreamSplitDispatcher(splits(2), 1);
+    XLearningContainerId first = container(1);
+    XLearningContainerId second = container(2);
+    InputSplit split = dispatcher.next(first);
+    assertNotNull(dispatcher.next(second));
+    // the first worker still reads, the second one has to wait for its splits
+    assertTrue(dispatcher.next(second) instanceof PendingSplit);
+    dispatcher.reclaim(first);
+    assertEquals(split, dispatcher.next(second));
+    assertNull(dispatcher.next(second));
+    assertEquals(0, dispatcher.getPendingSplits());
+  }
+
+  @Test
+  public void testEndOfInputOnceAllWorkersAreDone() {
+    StreamSplitDispatcher dispatcher = new StreamSplitDispatcher(splits(2), 1);
+    XLearningContainerId first = container(1);
+    XLearningContainerId second = container(2);
+    assertNotNull(dispatcher.next(first));
+    assertNotNull(dispatcher.next(second));
+    assertTrue(dispatcher.next(first) instanceof PendingSplit);
+    assertNull(dispatcher.next(second));
+    assertNull(dispatcher.next(first));
+    // a failure after all the workers ended their input leaves the splits unread
+    dispatcher.reclaim(first);
+    assertEquals(1, dispatcher.getPendingSplits());
+  }
+}
@@ -0,0 +1,85 @@
+package net.qihoo.xlearning.container;
+
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.util.NativeCodeLoader;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class StreamInputCacheTest {
+
+  private static final int FRAME_SIZE = 1024 * 1024;
+
+  private File cacheFile;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheFile = File.createTempFile("stream-input-cache", "");
+  }
+
+  @After
+  public void tearDown() {
+    cacheFile.delete();
+  }
+
+  @Test
+  public void testReplayLz4FramesLargerThanCodecBuffer() throws IOException {
+    // lz4 compresses at most io.compression.codec.lz4.buffersize, 256KB by default, in one block
+    Assume.assumeTrue(NativeCodeLoader.isNativeCodeLoaded());
+    checkReplay(Lz4Codec.class.getName());
+  }
+
+  @Test
+  public void testReplayDefaultCodecFrames() throws IOException {
+    checkReplay(DefaultCodec.class.getName());
+  }
+
+  @Test
+  public void testReplayUncompressedFrames() throws IOException {
+    checkReplay("");
+  }
+
+  private void checkReplay(String codec) throws IOException {
+    Configuration conf = new Configuration();
+    conf.set(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHEFILE_NAME, cacheFile.getAbsolutePath());
+    conf.set(XLearningConfiguration.XLEARNING_INPUTFORMAT_CACHE_CODEC, codec);
+    byte[][] splits = new byte[3][];
+    Random random = new Random(1);
+    for (int i = 0; i < splits.length; i++) {
+      // text-like bytes, a few full frames and a partial one
+      splits[i] = new byte[FRAME_SIZE * (i + 1) + 12345];
+      for (int j = 0; j < splits[i].length; j++) {
+        splits[i][j] = (byte) (random.nextInt(8) == 0 ? '\n' : 'a' + random.nextInt(16));
+      }
+    }
+    StreamInputCache cache = new StreamInputCache(conf, splits.length);
+    try {
+      for (int i = 0; i < splits.length; i++) {
+        cache.beginSplit(i);
+        for (int off = 0; off < splits[i].length; off += FRAME_SIZE) {
+          cache.write(splits[i], off, Math.min(FRAME_SIZE, splits[i].length - off));
+        }
+        cache.endSplit(i);
+      }
+      cache.finish();
+      for (int i = splits.length - 1; i >= 0; i--) {
+        ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+        cache.replay(i, replayed);
+        assertArrayEquals("split " + i, splits[i], replayed.toByteArray());
+      }
+    } finally {
+      cache.close();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package net.qihoo.xlearning.container;
+
+import net.qihoo.xlearning.api.ApplicationContainerProtocol;
+import net.qihoo.xlearning.conf.XLearningConfiguration;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class StreamInputFeederTest {
+
+  private static final int SPLITS = 30;
+
+  private static final int LINES = 100;
+
+  private File inputDir;
+
+  @Before
+  public void setUp() throws IOException {
+    inputDir = File.createTempFile("stream-input", "");
+    inputDir.delete();
+    inputDir.mkdirs();
+    for (int i = 0; i < SPLITS; i++) {
+      FileOutputStream out = new FileOutputStream(new File(inputDir, "part-" + i));
+      for (int j = 0; j < LINES; j++) {
+        out.write(("split " + i + " line " + j + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+      out.close();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : inputDir.listFiles()) {
+      file.delete();
+    }
+    inputDir.delete();
+  }
+
+  @Test
+  public void testDynamicDispatchFeedsAllSplits() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(XLearningConfiguration.XLEARNING_STREAM_READER_THREAD_NUMS, 4);
+    conf.setInt(XLearningConfiguration.XLEARNING_STREAM_PREFETCH_SPLITS, 3);
+    for (int round = 0; round < 20; round++) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new StreamInputFeeder(conf, newDispatcher(), null, out).run();
+      String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+      assertEquals("round " + round, SPLITS * LINES, lines.length);
+      assertEquals("round " + round, SPLITS * LINES, new HashSet<>(Arrays.asList(lines)).size());
+    }
+  }
+
+  @Test
+  public void testReadFailureIsRecorded() throws Exception {
+    List<InputSplit> inputs = new ArrayList<>();
+    File file = new File(inputDir, "part-0");
+    inputs.add(new FileSplit(new Path(file.toURI()), 0, file.length(), new String[0]));
+    inputs.add(new FileSplit(new Path(new File(inputDir, "missing").toURI()), 0, 100, new String[0]));
+    StreamInputFeeder feeder = new StreamInputFeeder(new Configuration(), inputs, new ByteArrayOutputStream());
+    feeder.run();
+    assertNotNull(feeder.getFailure());
+  }
+
+  /**
+   * An AM handing out the splits one by one, with a random delay so that the readers race for them.
+   */
+  private ApplicationContainerProtocol newDispatcher() {
+    final Deque<InputSplit> splits = new ArrayDeque<>();
+    for (int i = 0; i < SPLITS; i++) {
+      File file = new File(inputDir, "part-" + i);
+      splits.add(new FileSplit(new Path(file.toURI()), 0, file.length(), new String[0]));
+    }
+    final Random random = new Random();
+    return (ApplicationContainerProtocol) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class[]{ApplicationContainerProtocol.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().equals("getNextSplit")) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            // the calls reach the AM in any order
+            Thread.sleep(random.nextInt(5));
+            synchronized (splits) {
+              return splits.poll();
+            }
+          }
+        });
+  }
+}